@@ -0,0 +1,82 @@
+import java.util.*;
+
+/**
+ * Tunable thresholds of the TransportationAI, kept as one parameter vector so that the
+ * local tuner can search over them. DEFAULT is the vector shipped in the bundle.
+ */
+class AIParameters {
+    public static final String[] NAMES = {
+        "maxUpgradeCapacity", "highTrafficPodsPerCapacity", "underutilizedLoadFraction",
+        "astronautsPerPod", "teleporterCandidates", "investmentReturnRate"
+    };
+    public static final double[] LOWER = {1, 0.25, 0.0, 2, 1, 0.0};
+    public static final double[] UPPER = {6, 3.0, 1.0, 40, 10, 2.0};
+
+    public static final AIParameters DEFAULT = new AIParameters(new double[]{3, 1.0, 0.5, 10, 3, 0.1});
+
+    private final double[] values;
+
+    public AIParameters(double[] values) {
+        if (values.length != NAMES.length) {
+            throw new IllegalArgumentException("Expected " + NAMES.length + " parameters, got " + values.length);
+        }
+        this.values = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            this.values[i] = Math.max(LOWER[i], Math.min(UPPER[i], values[i]));
+        }
+    }
+
+    // Tubes are only upgraded while their capacity is below this value
+    public int getMaxUpgradeCapacity() {
+        return (int) Math.round(values[0]);
+    }
+
+    // A tube is high traffic when at least this many pods per capacity unit use it
+    public double getHighTrafficPodsPerCapacity() {
+        return values[1];
+    }
+
+    // Pods below this fraction of their capacity are considered underutilized
+    public double getUnderutilizedLoadFraction() {
+        return values[2];
+    }
+
+    // One pod is planned for every this many astronauts on a route
+    public double getAstronautsPerPod() {
+        return values[3];
+    }
+
+    // Best scoring teleporters offered to the budget allocation each turn
+    public int getTeleporterCandidates() {
+        return (int) Math.round(values[4]);
+    }
+
+    // Expected monthly points per resource for the next investments, used to value banking
+    public double getInvestmentReturnRate() {
+        return values[5];
+    }
+
+    public double[] toVector() {
+        return values.clone();
+    }
+
+    public String toJavaExpression() {
+        StringBuilder sb = new StringBuilder("new AIParameters(new double[]{");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(values[i]);
+        }
+        return sb.append("})").toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append(NAMES[i]).append('=').append(String.format(Locale.ROOT, "%.3f", values[i]));
+        }
+        return sb.toString();
+    }
+}
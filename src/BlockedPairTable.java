@@ -0,0 +1,70 @@
+import java.util.*;
+
+/**
+ * Which building pairs have another building on the segment between them, and so can never
+ * be joined by a tube. The table is updated as buildings arrive: a new building blocks the
+ * existing pairs it lies between, and its own pairs are checked against the existing
+ * buildings once. A lookup is then a single bit test, indexed by building id.
+ */
+class BlockedPairTable {
+    private int[] positions = new int[0];
+    private boolean[] present = new boolean[0];
+    private long[][] blocked = new long[0][];
+    private final List<Integer> buildingIds = new ArrayList<>();
+
+    public boolean contains(int buildingId) {
+        return buildingId < present.length && present[buildingId];
+    }
+
+    public void add(int buildingId, int position) {
+        if (contains(buildingId)) {
+            return;
+        }
+        ensureCapacity(buildingId + 1);
+        for (int i = 0; i < buildingIds.size(); i++) {
+            int first = buildingIds.get(i);
+            for (int j = i + 1; j < buildingIds.size(); j++) {
+                int second = buildingIds.get(j);
+                if (Geometry.isOnSegment(position, positions[first], positions[second])) {
+                    setBlocked(first, second);
+                }
+            }
+        }
+        for (int other : buildingIds) {
+            for (int between : buildingIds) {
+                if (between != other && Geometry.isOnSegment(positions[between], position, positions[other])) {
+                    setBlocked(buildingId, other);
+                    break;
+                }
+            }
+        }
+        positions[buildingId] = position;
+        present[buildingId] = true;
+        buildingIds.add(buildingId);
+    }
+
+    public boolean isBlocked(int buildingId1, int buildingId2) {
+        return contains(buildingId1) && contains(buildingId2)
+            && (blocked[buildingId1][buildingId2 >> 6] & 1L << buildingId2) != 0;
+    }
+
+    private void setBlocked(int buildingId1, int buildingId2) {
+        blocked[buildingId1][buildingId2 >> 6] |= 1L << buildingId2;
+        blocked[buildingId2][buildingId1 >> 6] |= 1L << buildingId1;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= present.length) {
+            return;
+        }
+        int capacity = Math.max(size, 2 * present.length);
+        int words = (capacity + 63) >> 6;
+        positions = Arrays.copyOf(positions, capacity);
+        present = Arrays.copyOf(present, capacity);
+        long[][] grown = new long[capacity][];
+        for (int id = 0; id < capacity; id++) {
+            grown[id] = id < blocked.length ? Arrays.copyOf(blocked[id], words) : new long[words];
+        }
+        blocked = grown;
+    }
+}
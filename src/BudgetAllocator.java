@@ -0,0 +1,219 @@
+import java.util.*;
+
+/**
+ * Picks one set of actions under the real budget from the candidates of every decision
+ * phase, each with a cost and an estimated monthly value. The net value of a candidate is
+ * its value over the months left minus its cost at the price of a resource, and only the
+ * set with the best total net value that fits in the budget is emitted, in the order the
+ * candidates were added.
+ *
+ * Small instances are solved exactly with a 0/1 knapsack over costs rounded up to
+ * COST_UNIT; larger ones fall back to a greedy by value per cost followed by a swap repair.
+ * Refunds (negative costs) are taken up front and their reverse, keeping the pod, competes
+ * as a normal candidate.
+ *
+ * A candidate may bundle several actions, such as the tubes of a path, and share some with
+ * other candidates. The selection charges each bundle in full; a shared action is then
+ * emitted and paid once, and the resources saved go to the candidates left out, at the cost
+ * of their actions not bought yet.
+ */
+class BudgetAllocator {
+    private static final int COST_UNIT = 50;
+    private static final long MAX_KNAPSACK_CELLS = 4_000_000L;
+
+    private final List<Candidate> candidates = new ArrayList<>();
+
+    public void add(String action, int cost, double value) {
+        add(List.of(action), new int[]{cost}, value);
+    }
+
+    // Actions bought together, each with its own cost
+    public void add(List<String> actions, int[] costs, double value) {
+        candidates.add(new Candidate(candidates.size(), actions, costs, value));
+    }
+
+    /**
+     * Returns the chosen actions. The resource value is the price of a resource in points,
+     * as given by the InvestmentPlanner.
+     */
+    public List<String> allocate(int budget, int monthsLeft, double resourceValue) {
+        boolean[] selected = new boolean[candidates.size()];
+        List<Candidate> items = new ArrayList<>();
+        int available = budget;
+
+        for (Candidate candidate : candidates) {
+            double net = candidate.value * monthsLeft - candidate.cost * resourceValue;
+            if (candidate.cost < 0) {
+                // Taken for its refund, undone if keeping it is worth the refund
+                selected[candidate.index] = true;
+                available -= candidate.cost;
+                if (-net > 0) {
+                    items.add(new Candidate(candidate.index, -candidate.cost, -net));
+                }
+            } else if (net > 0) {
+                items.add(new Candidate(candidate.index, candidate.cost, net));
+            }
+        }
+
+        long capacity = Math.max(0, available) / COST_UNIT;
+        List<Candidate> chosen = (long) items.size() * (capacity + 1) <= MAX_KNAPSACK_CELLS
+            ? knapsack(items, (int) capacity)
+            : greedyWithRepair(items, Math.max(0, available));
+        for (Candidate item : chosen) {
+            selected[item.index] = !selected[item.index];
+        }
+
+        Set<String> bought = new HashSet<>();
+        int left = budget;
+        for (Candidate candidate : candidates) {
+            if (selected[candidate.index]) {
+                left -= costNotBought(candidate, bought);
+                bought.addAll(candidate.actions);
+            }
+        }
+        refill(selected, bought, left, monthsLeft, resourceValue);
+
+        List<String> actions = new ArrayList<>();
+        Set<String> emitted = new HashSet<>();
+        for (Candidate candidate : candidates) {
+            if (selected[candidate.index]) {
+                for (String action : candidate.actions) {
+                    if (emitted.add(action)) {
+                        actions.add(action);
+                    }
+                }
+            }
+        }
+        return actions;
+    }
+
+    /**
+     * Spends what shared actions saved on the candidates left out, best net value per
+     * resource first, each paying only for its actions not bought yet.
+     */
+    private void refill(boolean[] selected, Set<String> bought, int left, int monthsLeft, double resourceValue) {
+        List<Candidate> rest = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (!selected[candidate.index] && candidate.cost >= 0) {
+                rest.add(candidate);
+            }
+        }
+        while (left > 0) {
+            Candidate best = null;
+            double bestRatio = 0;
+            for (Candidate candidate : rest) {
+                int cost = costNotBought(candidate, bought);
+                double net = candidate.value * monthsLeft - cost * resourceValue;
+                if (!selected[candidate.index] && cost <= left && net > 0 && net / Math.max(1, cost) > bestRatio) {
+                    best = candidate;
+                    bestRatio = net / Math.max(1, cost);
+                }
+            }
+            if (best == null) {
+                return;
+            }
+            selected[best.index] = true;
+            left -= costNotBought(best, bought);
+            bought.addAll(best.actions);
+        }
+    }
+
+    private static int costNotBought(Candidate candidate, Set<String> bought) {
+        int cost = 0;
+        for (int i = 0; i < candidate.actions.size(); i++) {
+            if (!bought.contains(candidate.actions.get(i))) {
+                cost += candidate.costs[i];
+            }
+        }
+        return cost;
+    }
+
+    private static List<Candidate> knapsack(List<Candidate> items, int capacity) {
+        int n = items.size();
+        double[] best = new double[capacity + 1];
+        boolean[][] taken = new boolean[n][capacity + 1];
+        for (int i = 0; i < n; i++) {
+            Candidate item = items.get(i);
+            int weight = (item.cost + COST_UNIT - 1) / COST_UNIT;
+            for (int c = capacity; c >= weight; c--) {
+                double value = best[c - weight] + item.value;
+                if (value > best[c]) {
+                    best[c] = value;
+                    taken[i][c] = true;
+                }
+            }
+        }
+
+        List<Candidate> chosen = new ArrayList<>();
+        int c = capacity;
+        for (int i = n - 1; i >= 0; i--) {
+            if (taken[i][c]) {
+                chosen.add(items.get(i));
+                c -= (items.get(i).cost + COST_UNIT - 1) / COST_UNIT;
+            }
+        }
+        return chosen;
+    }
+
+    private static List<Candidate> greedyWithRepair(List<Candidate> items, int budget) {
+        List<Candidate> sorted = new ArrayList<>(items);
+        sorted.sort((a, b) -> Double.compare(b.value / Math.max(1, b.cost), a.value / Math.max(1, a.cost)));
+
+        List<Candidate> chosen = new ArrayList<>();
+        List<Candidate> rest = new ArrayList<>();
+        int left = budget;
+        for (Candidate item : sorted) {
+            if (item.cost <= left) {
+                chosen.add(item);
+                left -= item.cost;
+            } else {
+                rest.add(item);
+            }
+        }
+
+        // Repair: swap a chosen item for a more valuable one that fits in its place
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int r = 0; r < rest.size() && !improved; r++) {
+                Candidate in = rest.get(r);
+                for (int c = 0; c < chosen.size(); c++) {
+                    Candidate out = chosen.get(c);
+                    if (in.value > out.value && in.cost - out.cost <= left) {
+                        chosen.set(c, in);
+                        rest.set(r, out);
+                        left -= in.cost - out.cost;
+                        improved = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return chosen;
+    }
+
+    private static class Candidate {
+        final int index;
+        final List<String> actions;
+        final int[] costs;
+        final int cost;
+        final double value;
+
+        Candidate(int index, List<String> actions, int[] costs, double value) {
+            this.index = index;
+            this.actions = actions;
+            this.costs = costs;
+            this.cost = Arrays.stream(costs).sum();
+            this.value = value;
+        }
+
+        // A knapsack item standing for the candidate at the given index
+        Candidate(int index, int cost, double value) {
+            this.index = index;
+            this.actions = Collections.emptyList();
+            this.costs = new int[0];
+            this.cost = cost;
+            this.value = value;
+        }
+    }
+}
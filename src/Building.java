@@ -24,6 +24,11 @@ abstract class Building {
         return y;
     }
 
+    // Coordinates packed for the Geometry kernel
+    public int getPosition() {
+        return Geometry.pack(x, y);
+    }
+
     public boolean hasTeleporter() {
         return hasTeleporter;
     }
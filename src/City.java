@@ -8,6 +8,19 @@ class City {
     private List<Teleporter> teleporters;
     private List<TransportPod> pods;
     private List<Astronaut> astronauts;
+    private MonthSimulator simulator;
+    private long stateHash;
+    private final Deque<Runnable> undoLog;
+    private final BlockedPairTable blockedPairs;
+    private final SegmentBatch tubeSegments;
+    private final DemandIndex demandIndex;
+    private final PodIdAllocator podIds;
+    // Lookups by id for apply, which runs for every move of the plan search
+    private final Map<Integer, Building> buildingIndex;
+    private final Map<Long, Tube> tubeIndex;
+    private final Map<Integer, TransportPod> podIndex;
+
+    static final int MAX_TUBES_PER_BUILDING = 5;
 
     public City() {
         this.resources = 0;
@@ -16,25 +29,44 @@ class City {
         this.teleporters = new ArrayList<>();
         this.pods = new ArrayList<>();
         this.astronauts = new ArrayList<>();
+        this.undoLog = new ArrayDeque<>();
+        this.blockedPairs = new BlockedPairTable();
+        this.tubeSegments = new SegmentBatch();
+        this.demandIndex = new DemandIndex();
+        this.podIds = new PodIdAllocator();
+        this.buildingIndex = new HashMap<>();
+        this.tubeIndex = new HashMap<>();
+        this.podIndex = new HashMap<>();
     }
 
     public void addBuilding(Building building) {
         buildings.add(building);
+        buildingIndex.put(building.getId(), building);
+        blockedPairs.add(building.getId(), building.getPosition());
+        indexDemand(building);
+        simulator = null;
     }
 
     public void addTube(Tube tube) {
         tubes.add(tube);
+        tubeIndex.put(tubeKey(tube.getStart(), tube.getEnd()), tube);
+        addSegment(tube);
         resources -= tube.getBaseCost();
+        simulator = null;
     }
 
     public void addTeleporter(Teleporter teleporter) {
         teleporters.add(teleporter);
         resources -= Teleporter.COST;
+        simulator = null;
     }
 
     public void addPod(TransportPod pod) {
         pods.add(pod);
+        podIndex.put(pod.getId(), pod);
+        podIds.markUsed(pod.getId());
         resources -= TransportPod.COST;
+        simulator = null;
     }
 
     public void addAstronaut(Astronaut astronaut) {
@@ -43,7 +75,10 @@ class City {
 
     public void removePod(TransportPod pod) {
         pods.remove(pod);
+        podIndex.remove(pod.getId());
+        podIds.release(pod.getId());
         resources += TransportPod.DECONSTRUCTION_REFUND;
+        simulator = null;
     }
 
     public void simulateDay() {
@@ -75,8 +110,12 @@ class City {
         if (existingTube != null) {
             existingTube.setCapacity(capacity);
         } else {
-            tubes.add(new Tube(building1, building2, capacity));
+            Tube tube = new Tube(building1, building2, capacity);
+            tubes.add(tube);
+            tubeIndex.put(tubeKey(building1, building2), tube);
+            addSegment(tube);
         }
+        simulator = null;
     }
 
     public void updatePod(int podId, int position, List<Integer> route) {
@@ -91,6 +130,8 @@ class City {
             }
             pod = new TransportPod(podId, routeBuildings);
             pods.add(pod);
+            podIndex.put(podId, pod);
+            podIds.markUsed(podId);
         } else {
             pod.updatePosition(position);
             List<Building> routeBuildings = route.stream()
@@ -99,6 +140,33 @@ class City {
                 .collect(Collectors.toList());
             pod.updateRoute(routeBuildings);
         }
+        simulator = null;
+    }
+
+    public void addOrUpdateTeleporter(int entranceId, int exitId) {
+        Building entrance = getBuildingById(entranceId);
+        Building exit = getBuildingById(exitId);
+        if (entrance == null || exit == null) {
+            System.err.println("Warning: Tried to add teleporter between non-existent buildings");
+            return;
+        }
+
+        boolean exists = teleporters.stream().anyMatch(t -> t.getEntrance() == entrance && t.getExit() == exit);
+        if (!exists) {
+            teleporters.add(new Teleporter(entrance, exit));
+        }
+        simulator = null;
+    }
+
+    public void retainPods(Set<Integer> podIds) {
+        for (TransportPod pod : pods) {
+            if (!podIds.contains(pod.getId())) {
+                this.podIds.release(pod.getId());
+            }
+        }
+        pods.removeIf(pod -> !podIds.contains(pod.getId()));
+        podIndex.keySet().retainAll(podIds);
+        simulator = null;
     }
 
     public void addOrUpdateBuilding(Building building) {
@@ -107,6 +175,243 @@ class City {
             buildings.remove(existingBuilding);
         }
         buildings.add(building);
+        buildingIndex.put(building.getId(), building);
+        blockedPairs.add(building.getId(), building.getPosition());
+        indexDemand(building);
+        simulator = null;
+    }
+
+    /**
+     * Primitive copy of the network used to simulate months, kept up to date by apply and
+     * rollback and rebuilt after any other change.
+     */
+    public MonthSimulator getSimulator() {
+        if (simulator == null) {
+            simulator = new MonthSimulator();
+            stateHash = 0;
+            for (Building building : buildings) {
+                if (building instanceof LandingPad landingPad) {
+                    simulator.addLandingPad(building.getId(), landingPad.getArrivalOrder());
+                } else if (building instanceof LunarModule module) {
+                    simulator.addModule(building.getId(), module.getModuleType());
+                }
+            }
+            for (Tube tube : tubes) {
+                simulator.addTube(tube.getStart().getId(), tube.getEnd().getId(), tube.getCapacity());
+                stateHash ^= Zobrist.tubeKey(tube.getStart().getId(), tube.getEnd().getId(), tube.getCapacity());
+            }
+            for (Teleporter teleporter : teleporters) {
+                simulator.addTeleporter(teleporter.getEntrance().getId(), teleporter.getExit().getId());
+                stateHash ^= Zobrist.teleporterKey(teleporter.getEntrance().getId(), teleporter.getExit().getId());
+            }
+            for (TransportPod pod : pods) {
+                int[] stops = pod.getRoute().stream().mapToInt(Building::getId).toArray();
+                simulator.setPod(pod.getId(), stops);
+                stateHash ^= Zobrist.podKey(pod.getId(), stops);
+            }
+        }
+        return simulator;
+    }
+
+    /**
+     * Zobrist hash of the tubes, teleporters and pods, maintained by apply and rollback.
+     */
+    public long getStateHash() {
+        getSimulator();
+        return stateHash;
+    }
+
+    /**
+     * Applies a planned action if it is valid and affordable, recording how to undo it.
+     * Returns false and leaves the city untouched otherwise.
+     */
+    public boolean apply(PlanAction action) {
+        switch (action.getType()) {
+            case TUBE: return applyTube(action.getFirst(), action.getSecond());
+            case UPGRADE: return applyUpgrade(action.getFirst(), action.getSecond());
+            case TELEPORT: return applyTeleporter(action.getFirst(), action.getSecond());
+            case POD: return applyPod(action.getPodId(), action.getStops());
+            case DESTROY: return applyDestroy(action.getPodId());
+            default: return false;
+        }
+    }
+
+    public int mark() {
+        return undoLog.size();
+    }
+
+    /**
+     * Undoes every action applied since the given mark, most recent first.
+     */
+    public void rollback(int mark) {
+        while (undoLog.size() > mark) {
+            undoLog.pop().run();
+        }
+    }
+
+    private boolean applyTube(int buildingId1, int buildingId2) {
+        Building building1 = getBuildingById(buildingId1);
+        Building building2 = getBuildingById(buildingId2);
+        if (building1 == null || building2 == null || !canAddTube(building1, building2)) {
+            return false;
+        }
+        Tube tube = new Tube(building1, building2, 1);
+        if (tube.getBaseCost() > resources) {
+            return false;
+        }
+        MonthSimulator sim = getSimulator();
+        long key = Zobrist.tubeKey(buildingId1, buildingId2, 1);
+        long index = tubeKey(building1, building2);
+        tubes.add(tube);
+        tubeIndex.put(index, tube);
+        addSegment(tube);
+        resources -= tube.getBaseCost();
+        sim.addTube(buildingId1, buildingId2, 1);
+        stateHash ^= key;
+        undoLog.push(() -> {
+            tubes.remove(tubes.size() - 1);
+            tubeIndex.remove(index);
+            tubeSegments.removeLast();
+            resources += tube.getBaseCost();
+            sim.removeLastTube();
+            stateHash ^= key;
+        });
+        return true;
+    }
+
+    private boolean applyUpgrade(int buildingId1, int buildingId2) {
+        Tube tube = getTubeByBuildings(getBuildingById(buildingId1), getBuildingById(buildingId2));
+        if (tube == null) {
+            return false;
+        }
+        int capacity = tube.getCapacity();
+        int cost = tube.getBaseCost() * (capacity + 1);
+        if (cost > resources) {
+            return false;
+        }
+        MonthSimulator sim = getSimulator();
+        int simulatedTube = sim.tubeBetween(buildingId1, buildingId2);
+        long keys = Zobrist.tubeKey(buildingId1, buildingId2, capacity) ^ Zobrist.tubeKey(buildingId1, buildingId2, capacity + 1);
+        tube.setCapacity(capacity + 1);
+        resources -= cost;
+        sim.setTubeCapacity(simulatedTube, capacity + 1);
+        stateHash ^= keys;
+        undoLog.push(() -> {
+            tube.setCapacity(capacity);
+            resources += cost;
+            sim.setTubeCapacity(simulatedTube, capacity);
+            stateHash ^= keys;
+        });
+        return true;
+    }
+
+    private boolean applyTeleporter(int entranceId, int exitId) {
+        Building entrance = getBuildingById(entranceId);
+        Building exit = getBuildingById(exitId);
+        if (entrance == null || exit == null || entrance == exit || entrance.hasTeleporter() || exit.hasTeleporter()
+            || resources < Teleporter.COST) {
+            return false;
+        }
+        MonthSimulator sim = getSimulator();
+        long key = Zobrist.teleporterKey(entranceId, exitId);
+        teleporters.add(new Teleporter(entrance, exit));
+        resources -= Teleporter.COST;
+        sim.addTeleporter(entranceId, exitId);
+        stateHash ^= key;
+        undoLog.push(() -> {
+            teleporters.remove(teleporters.size() - 1);
+            entrance.setHasTeleporter(false);
+            exit.setHasTeleporter(false);
+            resources += Teleporter.COST;
+            sim.removeTeleporter(entranceId);
+            stateHash ^= key;
+        });
+        return true;
+    }
+
+    private boolean applyPod(int podId, int[] stops) {
+        if (podIds.isUsed(podId) || stops.length < 2 || resources < TransportPod.COST) {
+            return false;
+        }
+        MonthSimulator sim = getSimulator();
+        List<Building> route = new ArrayList<>();
+        for (int i = 0; i < stops.length; i++) {
+            if (i > 0 && sim.tubeBetween(stops[i - 1], stops[i]) < 0) {
+                return false;
+            }
+            route.add(getBuildingById(stops[i]));
+        }
+        TransportPod pod = new TransportPod(podId, route);
+        long key = Zobrist.podKey(podId, stops);
+        pods.add(pod);
+        podIndex.put(podId, pod);
+        podIds.markUsed(podId);
+        resources -= TransportPod.COST;
+        sim.setPod(podId, stops);
+        stateHash ^= key;
+        undoLog.push(() -> {
+            pods.remove(pod);
+            podIndex.remove(podId);
+            podIds.release(podId);
+            resources += TransportPod.COST;
+            sim.removePod(podId);
+            stateHash ^= key;
+        });
+        return true;
+    }
+
+    private boolean applyDestroy(int podId) {
+        TransportPod pod = getPodById(podId);
+        if (pod == null) {
+            return false;
+        }
+        MonthSimulator sim = getSimulator();
+        int[] stops = pod.getRoute().stream().mapToInt(Building::getId).toArray();
+        long key = Zobrist.podKey(podId, stops);
+        pods.remove(pod);
+        podIndex.remove(podId);
+        podIds.release(podId);
+        resources += TransportPod.DECONSTRUCTION_REFUND;
+        sim.removePod(podId);
+        stateHash ^= key;
+        undoLog.push(() -> {
+            pods.add(pod);
+            podIndex.put(podId, pod);
+            podIds.markUsed(podId);
+            resources -= TransportPod.DECONSTRUCTION_REFUND;
+            sim.setPod(podId, stops);
+            stateHash ^= key;
+        });
+        return true;
+    }
+
+    /**
+     * Checks the construction rules of a new tube: at most five tubes per building, no
+     * building on the way and no crossing with another tube.
+     */
+    public boolean canAddTube(Building building1, Building building2) {
+        if (building1 == building2 || blockedPairs.isBlocked(building1.getId(), building2.getId())) {
+            return false;
+        }
+        MonthSimulator sim = getSimulator();
+        if (sim.tubeBetween(building1.getId(), building2.getId()) >= 0
+            || sim.getDegree(building1.getId()) >= MAX_TUBES_PER_BUILDING
+            || sim.getDegree(building2.getId()) >= MAX_TUBES_PER_BUILDING) {
+            return false;
+        }
+        return !tubeSegments.crossesAny(building1.getX(), building1.getY(), building2.getX(), building2.getY());
+    }
+
+    private void indexDemand(Building building) {
+        if (building instanceof LandingPad landingPad) {
+            demandIndex.addLandingPad(building.getId(), landingPad.getAstronautTypeCounts());
+        } else if (building instanceof LunarModule module) {
+            demandIndex.addModule(building.getId(), module.getModuleType());
+        }
+    }
+
+    private void addSegment(Tube tube) {
+        tubeSegments.add(tube.getStart().getX(), tube.getStart().getY(), tube.getEnd().getX(), tube.getEnd().getY());
     }
 
     private void handlePodArrival(TransportPod pod) {
@@ -236,15 +541,31 @@ class City {
         this.resources = resources;
     }
 
+    // Ids of the pods in service, including the planned ones
+    public PodIdAllocator getPodIds() {
+        return podIds;
+    }
+
+    public DemandIndex getDemandIndex() {
+        return demandIndex;
+    }
+
     public Building getBuildingById(int id) {
-        return buildings.stream() .filter(b -> b.getId() == id) .findFirst() .orElse(null);
+        return buildingIndex.get(id);
     }
 
     public TransportPod getPodById(int id) {
-        return pods.stream() .filter(p -> p.getId() == id) .findFirst() .orElse(null);
+        return podIndex.get(id);
     }
 
     public Tube getTubeByBuildings(Building building1, Building building2) {
-        return tubes.stream() .filter(t -> (t.getStart() == building1 && t.getEnd() == building2) || (t.getStart() == building2 && t.getEnd() == building1)) .findFirst() .orElse(null);
+        return building1 == null || building2 == null ? null : tubeIndex.get(tubeKey(building1, building2));
+    }
+
+    // Same key for both directions of a tube
+    private static long tubeKey(Building building1, Building building2) {
+        int low = Math.min(building1.getId(), building2.getId());
+        int high = Math.max(building1.getId(), building2.getId());
+        return (long) low << 32 | high;
     }
 }
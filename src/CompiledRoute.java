@@ -0,0 +1,86 @@
+/**
+ * A pod route compiled against the tubes of a MonthSimulator: the tube index of every leg
+ * and the end it is entered from, with the POD rules for what happens at the last stop. A
+ * route ending where it started loops forever, any other route stays at its last stop.
+ *
+ * The day tables give where the pod starts each day and the tube it enters, as long as it
+ * is never held back by a full tube. The simulator reads the legs directly instead of
+ * looking tubes up, and congestion models start from the tables.
+ */
+class CompiledRoute {
+    public static final int IDLE = -1;
+
+    private final int podId;
+    private final int[] stops;
+    private final int[] legTubes;
+    private final boolean[] legFromStart;
+    private final boolean loop;
+
+    private final int[] dayPosition = new int[MonthSimulator.DAYS + 1];
+    private final int[] dayTube = new int[MonthSimulator.DAYS];
+
+    /**
+     * Compiles the stops given the tube index of each leg, IDLE where no tube joins two
+     * stops, and whether each leg is entered from the first end of its tube.
+     */
+    public CompiledRoute(int podId, int[] stops, int[] legTubes, boolean[] legFromStart) {
+        this.podId = podId;
+        this.stops = stops.clone();
+        this.legTubes = legTubes;
+        this.legFromStart = legFromStart;
+        this.loop = stops.length > 1 && stops[0] == stops[stops.length - 1];
+
+        int step = 0;
+        boolean stuck = false;
+        for (int day = 0; day < MonthSimulator.DAYS; day++) {
+            if (loop && step == legCount()) {
+                step = 0;
+            }
+            dayPosition[day] = this.stops[step];
+            if (stuck || step >= legCount() || legTubes[step] == IDLE) {
+                // A missing tube holds the pod where it is for the rest of the month
+                stuck = true;
+                dayTube[day] = IDLE;
+            } else {
+                dayTube[day] = legTubes[step];
+                step++;
+            }
+        }
+        dayPosition[MonthSimulator.DAYS] = this.stops[step];
+    }
+
+    public int getPodId() {
+        return podId;
+    }
+
+    public int[] getStops() {
+        return stops;
+    }
+
+    public boolean isLoop() {
+        return loop;
+    }
+
+    public int legCount() {
+        return stops.length - 1;
+    }
+
+    // Tube of the leg leaving the stop at the given step, IDLE if there is none
+    public int getLegTube(int step) {
+        return legTubes[step];
+    }
+
+    public boolean isLegFromStart(int step) {
+        return legFromStart[step];
+    }
+
+    // Building the pod is at on the morning of the day, without congestion
+    public int getPosition(int day) {
+        return dayPosition[day];
+    }
+
+    // Tube entered on the day, IDLE when the pod does not move
+    public int getTube(int day) {
+        return dayTube[day];
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.*;
+
+/**
+ * Replays the pod movements of a month on their compiled routes, without astronauts, to
+ * see where pods wait for a full tube. Pods enter tubes by increasing id, so a pod is only
+ * held back by lower ids. Each tube gets a bitmap of the days it turned pods away, and each
+ * pod its days of delay.
+ *
+ * What-if replays with one more capacity on a tube, or with a pod under another id, give
+ * the delay an upgrade or a renumbering would remove.
+ */
+class CongestionModel {
+    private static final int DAYS = MonthSimulator.DAYS;
+
+    private final CompiledRoute[] routes;
+    private final int[] capacity;
+    private final int tubeCount;
+
+    // Bit d is set when the tube turned a pod away on day d
+    private final int[] congestedDays;
+    private final int[] podDelay;
+    private final int totalDelay;
+
+    public CongestionModel(MonthSimulator sim) {
+        this.routes = sim.getRoutes().toArray(new CompiledRoute[0]);
+        this.tubeCount = sim.getTubeCount();
+        this.capacity = new int[tubeCount];
+        for (int tube = 0; tube < tubeCount; tube++) {
+            capacity[tube] = sim.getTubeCapacity(tube);
+        }
+        this.congestedDays = new int[tubeCount];
+        this.podDelay = new int[routes.length];
+        this.totalDelay = replay(identityOrder(), capacity, true);
+    }
+
+    // Ids of the pods held back at least once, lowest first
+    public List<Integer> getDelayedPods() {
+        List<Integer> delayed = new ArrayList<>();
+        for (int p = 0; p < routes.length; p++) {
+            if (podDelay[p] > 0) {
+                delayed.add(routes[p].getPodId());
+            }
+        }
+        return delayed;
+    }
+
+    /**
+     * Days of delay removed over the month by one more capacity on the tube.
+     */
+    public int upgradeGain(int tube) {
+        if (congestedDays[tube] == 0) {
+            return 0;
+        }
+        int[] upgraded = capacity.clone();
+        upgraded[tube]++;
+        return totalDelay - replay(identityOrder(), upgraded, false);
+    }
+
+    /**
+     * Days of delay removed over the month if the pod had the given id instead, which
+     * changes who it yields to.
+     */
+    public int renumberGain(int podId, int newId) {
+        int index = indexOf(podId);
+        if (index < 0 || podDelay[index] == 0) {
+            return 0;
+        }
+        Integer[] order = new Integer[routes.length];
+        for (int p = 0; p < routes.length; p++) {
+            order[p] = p;
+        }
+        Arrays.sort(order, Comparator.comparingInt(p -> p == index ? newId : routes[p].getPodId()));
+        int[] priority = new int[routes.length];
+        for (int p = 0; p < routes.length; p++) {
+            priority[p] = order[p];
+        }
+        return totalDelay - replay(priority, capacity, false);
+    }
+
+    /**
+     * Moves every pod for a month, in the given priority order, and returns the total
+     * days pods spent waiting for a full tube. The delays are only recorded on the first replay.
+     */
+    private int replay(int[] order, int[] capacity, boolean record) {
+        int[] step = new int[routes.length];
+        int[] use = new int[tubeCount];
+        int delay = 0;
+        for (int day = 0; day < DAYS; day++) {
+            Arrays.fill(use, 0);
+            for (int p : order) {
+                CompiledRoute route = routes[p];
+                if (route.isLoop() && step[p] == route.legCount()) {
+                    step[p] = 0;
+                }
+                if (step[p] >= route.legCount() || route.getLegTube(step[p]) < 0) {
+                    continue;
+                }
+                int tube = route.getLegTube(step[p]);
+                if (use[tube] < capacity[tube]) {
+                    use[tube]++;
+                    step[p]++;
+                } else {
+                    delay++;
+                    if (record) {
+                        podDelay[p]++;
+                        congestedDays[tube] |= 1 << day;
+                    }
+                }
+            }
+        }
+        return delay;
+    }
+
+    private int[] identityOrder() {
+        int[] order = new int[routes.length];
+        for (int p = 0; p < routes.length; p++) {
+            order[p] = p;
+        }
+        return order;
+    }
+
+    private int indexOf(int podId) {
+        for (int p = 0; p < routes.length; p++) {
+            if (routes[p].getPodId() == podId) {
+                return p;
+            }
+        }
+        return -1;
+    }
+}
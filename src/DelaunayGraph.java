@@ -0,0 +1,297 @@
+import java.util.*;
+
+/**
+ * Delaunay triangulation of the buildings, maintained incrementally as they are built
+ * (Bowyer-Watson). A new point is located by walking from the last triangle created, and
+ * only the triangles whose circumcircle contains it are replaced, so an insertion costs
+ * O(log n) expected rather than a scan of every triangle.
+ *
+ * Its edges are the short, non-crossing pairs useful tubes are almost always made of,
+ * about 3n of them instead of the n^2 / 2 building pairs. Coordinates are small integers,
+ * so the orientation and in-circle predicates are computed exactly on longs.
+ */
+class DelaunayGraph {
+    // Far enough around the 160 x 90 city to keep the hull edges, small enough for exact longs
+    private static final int SUPER_MIN = -3000;
+    private static final int SUPER_MAX = 6000;
+
+    private int pointCount;
+    private int[] px = new int[64];
+    private int[] py = new int[64];
+    private int[] buildingIds = new int[64];
+    private final Map<Integer, Integer> pointByBuilding = new HashMap<>();
+
+    private int triangleCount;
+    private int[] vertices = new int[3 * 256];
+    private int[] neighbors = new int[3 * 256];
+    private boolean[] alive = new boolean[256];
+    private int lastTriangle;
+
+    public DelaunayGraph() {
+        addPoint(-1, SUPER_MIN, SUPER_MIN);
+        addPoint(-1, SUPER_MAX, SUPER_MIN);
+        addPoint(-1, SUPER_MIN, SUPER_MAX);
+        lastTriangle = newTriangle(0, 1, 2, -1, -1, -1);
+    }
+
+    public boolean contains(int buildingId) {
+        return pointByBuilding.containsKey(buildingId);
+    }
+
+    public void insert(int buildingId, int x, int y) {
+        if (contains(buildingId)) {
+            return;
+        }
+        int point = addPoint(buildingId, x, y);
+        int start = locate(x, y);
+
+        // Cavity: the connected triangles whose circumcircle strictly contains the point
+        List<Integer> cavity = new ArrayList<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        boolean[] inCavity = new boolean[triangleCount];
+        stack.push(start);
+        inCavity[start] = true;
+        while (!stack.isEmpty()) {
+            int t = stack.pop();
+            cavity.add(t);
+            for (int k = 0; k < 3; k++) {
+                int n = neighbors[3 * t + k];
+                if (n >= 0 && !inCavity[n] && inCircle(n, x, y)) {
+                    inCavity[n] = true;
+                    stack.push(n);
+                }
+            }
+        }
+
+        // Fan the cavity boundary around the new point
+        int[] byStart = new int[pointCount];
+        int[] byEnd = new int[pointCount];
+        List<Integer> created = new ArrayList<>();
+        for (int t : cavity) {
+            for (int k = 0; k < 3; k++) {
+                int outer = neighbors[3 * t + k];
+                if (outer >= 0 && outer < inCavity.length && inCavity[outer]) {
+                    continue;
+                }
+                int a = vertices[3 * t + (k + 1) % 3];
+                int b = vertices[3 * t + (k + 2) % 3];
+                int fresh = newTriangle(a, b, point, -1, -1, outer);
+                if (outer >= 0) {
+                    for (int j = 0; j < 3; j++) {
+                        if (neighbors[3 * outer + j] == t) {
+                            neighbors[3 * outer + j] = fresh;
+                        }
+                    }
+                }
+                byStart[a] = fresh;
+                byEnd[b] = fresh;
+                created.add(fresh);
+            }
+            alive[t] = false;
+        }
+        for (int t : created) {
+            int a = vertices[3 * t];
+            int b = vertices[3 * t + 1];
+            neighbors[3 * t] = byStart[b];
+            neighbors[3 * t + 1] = byEnd[a];
+        }
+        lastTriangle = created.get(0);
+    }
+
+    /**
+     * Building id pairs of the Delaunay edges between real buildings.
+     */
+    public List<int[]> edges() {
+        List<int[]> edges = new ArrayList<>();
+        for (int t = 0; t < triangleCount; t++) {
+            if (!alive[t]) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                int a = vertices[3 * t + (k + 1) % 3];
+                int b = vertices[3 * t + (k + 2) % 3];
+                // Every edge is shared by two triangles, in opposite directions
+                if (a < b && a >= 3) {
+                    edges.add(new int[]{buildingIds[a], buildingIds[b]});
+                }
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * Delaunay edges plus, for each building, the edges to its k nearest buildings. The
+     * nearest neighbors are found by a best-first walk over the triangulation, since they
+     * always form a connected subgraph around the building.
+     */
+    public List<int[]> candidateEdges(int nearest) {
+        List<int[]> edges = edges();
+        if (nearest <= 0) {
+            return edges;
+        }
+        Set<Long> known = new HashSet<>();
+        for (int[] edge : edges) {
+            known.add(pairKey(edge[0], edge[1]));
+        }
+        List<List<Integer>> adjacency = pointAdjacency();
+        for (int p = 3; p < pointCount; p++) {
+            for (int q : nearestPoints(p, nearest, adjacency)) {
+                if (known.add(pairKey(buildingIds[p], buildingIds[q]))) {
+                    edges.add(new int[]{buildingIds[p], buildingIds[q]});
+                }
+            }
+        }
+        return edges;
+    }
+
+    private List<Integer> nearestPoints(int p, int k, List<List<Integer>> adjacency) {
+        PriorityQueue<int[]> frontier = new PriorityQueue<>(Comparator.comparingInt((int[] e) -> e[0]));
+        Set<Integer> seen = new HashSet<>();
+        List<Integer> nearest = new ArrayList<>();
+        seen.add(p);
+        for (int q : adjacency.get(p)) {
+            seen.add(q);
+            frontier.add(new int[]{squaredDistance(p, q), q});
+        }
+        while (!frontier.isEmpty() && nearest.size() < k) {
+            int q = frontier.poll()[1];
+            nearest.add(q);
+            for (int r : adjacency.get(q)) {
+                if (seen.add(r)) {
+                    frontier.add(new int[]{squaredDistance(p, r), r});
+                }
+            }
+        }
+        return nearest;
+    }
+
+    private List<List<Integer>> pointAdjacency() {
+        List<List<Integer>> adjacency = new ArrayList<>();
+        for (int p = 0; p < pointCount; p++) {
+            adjacency.add(new ArrayList<>());
+        }
+        for (int t = 0; t < triangleCount; t++) {
+            if (!alive[t]) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                int a = vertices[3 * t + (k + 1) % 3];
+                int b = vertices[3 * t + (k + 2) % 3];
+                if (a < b && a >= 3) {
+                    adjacency.get(a).add(b);
+                    adjacency.get(b).add(a);
+                }
+            }
+        }
+        return adjacency;
+    }
+
+    private int locate(int x, int y) {
+        int t = lastTriangle;
+        if (!alive[t]) {
+            t = firstAlive();
+        }
+        // Walk towards the point across any edge it lies beyond
+        for (int steps = 0; steps <= triangleCount; steps++) {
+            int next = -1;
+            for (int k = 0; k < 3 && next < 0; k++) {
+                int a = vertices[3 * t + (k + 1) % 3];
+                int b = vertices[3 * t + (k + 2) % 3];
+                if (orientation(a, b, x, y) < 0) {
+                    next = neighbors[3 * t + k];
+                }
+            }
+            if (next < 0) {
+                return t;
+            }
+            t = next;
+        }
+        // Degenerate walk, fall back on a scan
+        for (int s = 0; s < triangleCount; s++) {
+            if (alive[s] && contains(s, x, y)) {
+                return s;
+            }
+        }
+        return firstAlive();
+    }
+
+    private boolean contains(int t, int x, int y) {
+        for (int k = 0; k < 3; k++) {
+            if (orientation(vertices[3 * t + (k + 1) % 3], vertices[3 * t + (k + 2) % 3], x, y) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int firstAlive() {
+        for (int t = triangleCount - 1; t >= 0; t--) {
+            if (alive[t]) {
+                return t;
+            }
+        }
+        throw new IllegalStateException("Empty triangulation");
+    }
+
+    private long orientation(int a, int b, int x, int y) {
+        return (long) (px[b] - px[a]) * (y - py[a]) - (long) (py[b] - py[a]) * (x - px[a]);
+    }
+
+    private boolean inCircle(int t, int x, int y) {
+        int a = vertices[3 * t];
+        int b = vertices[3 * t + 1];
+        int c = vertices[3 * t + 2];
+        long adx = px[a] - x;
+        long ady = py[a] - y;
+        long bdx = px[b] - x;
+        long bdy = py[b] - y;
+        long cdx = px[c] - x;
+        long cdy = py[c] - y;
+        long det = (adx * adx + ady * ady) * (bdx * cdy - cdx * bdy)
+            - (bdx * bdx + bdy * bdy) * (adx * cdy - cdx * ady)
+            + (cdx * cdx + cdy * cdy) * (adx * bdy - bdx * ady);
+        return det > 0;
+    }
+
+    private int squaredDistance(int p, int q) {
+        int dx = px[p] - px[q];
+        int dy = py[p] - py[q];
+        return dx * dx + dy * dy;
+    }
+
+    private static long pairKey(int a, int b) {
+        return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+    }
+
+    private int addPoint(int buildingId, int x, int y) {
+        if (pointCount == px.length) {
+            px = Arrays.copyOf(px, pointCount * 2);
+            py = Arrays.copyOf(py, pointCount * 2);
+            buildingIds = Arrays.copyOf(buildingIds, pointCount * 2);
+        }
+        px[pointCount] = x;
+        py[pointCount] = y;
+        buildingIds[pointCount] = buildingId;
+        if (buildingId >= 0) {
+            pointByBuilding.put(buildingId, pointCount);
+        }
+        return pointCount++;
+    }
+
+    private int newTriangle(int a, int b, int c, int na, int nb, int nc) {
+        if (triangleCount == alive.length) {
+            vertices = Arrays.copyOf(vertices, 6 * triangleCount);
+            neighbors = Arrays.copyOf(neighbors, 6 * triangleCount);
+            alive = Arrays.copyOf(alive, 2 * triangleCount);
+        }
+        int t = triangleCount++;
+        vertices[3 * t] = a;
+        vertices[3 * t + 1] = b;
+        vertices[3 * t + 2] = c;
+        neighbors[3 * t] = na;
+        neighbors[3 * t + 1] = nb;
+        neighbors[3 * t + 2] = nc;
+        alive[t] = true;
+        return t;
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.*;
+
+/**
+ * Astronaut demand and modules by type as dense arrays, updated as buildings are parsed:
+ * the astronauts of each landing pad by type, their totals by type, and the modules of
+ * each type. Decisions iterate these instead of scanning buildings and boxed maps.
+ */
+class DemandIndex {
+    public static final int MAX_TYPES = MonthSimulator.MAX_TYPES;
+
+    private int padCount;
+    private int[] padIds = new int[16];
+    private int[][] demand = new int[16][];
+    private final Map<Integer, Integer> padIndexById = new HashMap<>();
+    private final int[] typeDemand = new int[MAX_TYPES];
+    private int totalAstronauts;
+
+    private final int[] moduleCount = new int[MAX_TYPES];
+    private final int[][] modulesByType = new int[MAX_TYPES][4];
+    private final Set<Integer> moduleIds = new HashSet<>();
+
+    /**
+     * Adds a landing pad, or replaces the demand of one already known.
+     */
+    public void addLandingPad(int padId, Map<Integer, Integer> astronautTypeCounts) {
+        Integer index = padIndexById.get(padId);
+        if (index == null) {
+            if (padCount == padIds.length) {
+                padIds = Arrays.copyOf(padIds, 2 * padCount);
+                demand = Arrays.copyOf(demand, 2 * padCount);
+            }
+            index = padCount++;
+            padIds[index] = padId;
+            demand[index] = new int[MAX_TYPES];
+            padIndexById.put(padId, index);
+        }
+        int[] row = demand[index];
+        for (int type = 0; type < MAX_TYPES; type++) {
+            typeDemand[type] -= row[type];
+            totalAstronauts -= row[type];
+            row[type] = 0;
+        }
+        for (Map.Entry<Integer, Integer> entry : astronautTypeCounts.entrySet()) {
+            row[entry.getKey()] += entry.getValue();
+            typeDemand[entry.getKey()] += entry.getValue();
+            totalAstronauts += entry.getValue();
+        }
+    }
+
+    public void addModule(int moduleId, int type) {
+        if (!moduleIds.add(moduleId)) {
+            return;
+        }
+        if (moduleCount[type] == modulesByType[type].length) {
+            modulesByType[type] = Arrays.copyOf(modulesByType[type], 2 * moduleCount[type]);
+        }
+        modulesByType[type][moduleCount[type]++] = moduleId;
+    }
+
+    public int getPadCount() {
+        return padCount;
+    }
+
+    public int getPadId(int padIndex) {
+        return padIds[padIndex];
+    }
+
+    // Astronauts of the type on the landing pad at the given index
+    public int getDemand(int padIndex, int type) {
+        return demand[padIndex][type];
+    }
+
+    public int getTypeDemand(int type) {
+        return typeDemand[type];
+    }
+
+    public int getTotalAstronauts() {
+        return totalAstronauts;
+    }
+
+    public int getModuleCount(int type) {
+        return moduleCount[type];
+    }
+
+    /**
+     * Ids of the modules of the type, valid up to getModuleCount(type).
+     */
+    public int[] getModules(int type) {
+        return modulesByType[type];
+    }
+}
@@ -1,7 +1,7 @@
 class GameState {
     private int totalScore;
     private int currentMonth;
-    private static final int MAX_MONTHS = 12;
+    public static final int MAX_MONTHS = 20;
 
     public GameState() {
         this.totalScore = 0;
@@ -43,8 +43,9 @@ class GameState {
         return (double) totalScore / currentMonth;
     }
 
-    public int getRemainingMonths() {
-        return MAX_MONTHS - currentMonth;
+    // Months still to be played, the current one included: MAX_MONTHS in the first month
+    public int getMonthsLeftIncludingCurrent() {
+        return MAX_MONTHS - currentMonth + 1;
     }
 
     @Override
@@ -0,0 +1,50 @@
+/**
+ * Exact integer geometry on packed coordinates: x in the high 16 bits of an int and y in
+ * the low 16 bits. City coordinates are small and non-negative, so every cross product
+ * fits in a long and no comparison needs an epsilon.
+ */
+class Geometry {
+    private Geometry() {
+    }
+
+    public static int pack(int x, int y) {
+        return x << 16 | y;
+    }
+
+    public static int x(int point) {
+        return point >>> 16;
+    }
+
+    public static int y(int point) {
+        return point & 0xFFFF;
+    }
+
+    /**
+     * Cross product of (b - a) and (c - a): positive when c is to the left of a -> b,
+     * negative to the right, zero when the three points are aligned.
+     */
+    public static long cross(int a, int b, int c) {
+        return (long) (x(b) - x(a)) * (y(c) - y(a)) - (long) (y(b) - y(a)) * (x(c) - x(a));
+    }
+
+    public static int orientation(int a, int b, int c) {
+        return Long.signum(cross(a, b, c));
+    }
+
+    /**
+     * Whether the segments a-b and c-d cross at a point inside both of them. Segments that
+     * only touch, at an endpoint or along a line, do not cross.
+     */
+    public static boolean segmentsCross(int a, int b, int c, int d) {
+        return orientation(a, b, c) * orientation(a, b, d) < 0 && orientation(c, d, a) * orientation(c, d, b) < 0;
+    }
+
+    /**
+     * Whether the point lies on the closed segment from start to end.
+     */
+    public static boolean isOnSegment(int point, int start, int end) {
+        return cross(start, end, point) == 0
+            && Math.min(x(start), x(end)) <= x(point) && x(point) <= Math.max(x(start), x(end))
+            && Math.min(y(start), y(end)) <= y(point) && y(point) <= Math.max(y(start), y(end));
+    }
+}
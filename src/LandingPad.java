@@ -5,12 +5,18 @@ import java.util.Set;
 
 public class LandingPad extends Building {
     private Map<Integer, Integer> astronautTypeCounts;
+    // Types of the astronauts in the order of the input, which is the order they board in
+    private int[] arrivalOrder;
     private int totalAstronauts;
 
-    public LandingPad(int id, int x, int y, Map<Integer, Integer> astronautTypes) {
+    public LandingPad(int id, int x, int y, int[] astronautTypes) {
         super(id, x, y);
-        this.astronautTypeCounts = new HashMap<>(astronautTypes);
-        this.totalAstronauts = astronautTypes.values().stream().mapToInt(Integer::intValue).sum();
+        this.astronautTypeCounts = new HashMap<>();
+        for (int type : astronautTypes) {
+            astronautTypeCounts.merge(type, 1, Integer::sum);
+        }
+        this.arrivalOrder = astronautTypes.clone();
+        this.totalAstronauts = astronautTypes.length;
 
         System.err.println("Debug: LandingPad " + id + " created with total astronauts: " + this.totalAstronauts +
             ", astronauts by type: " + this.astronautTypeCounts);
@@ -24,6 +30,10 @@ public class LandingPad extends Building {
         return astronautTypeCounts;
     }
 
+    public int[] getArrivalOrder() {
+        return arrivalOrder;
+    }
+
     public Set<Integer> getAstronautTypes() {
         return Collections.unmodifiableSet(astronautTypeCounts.keySet());
     }
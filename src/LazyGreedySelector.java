@@ -0,0 +1,89 @@
+import java.util.*;
+
+/**
+ * Greedy selection by marginal gain, evaluated lazily (CELF). Candidates sit in a max-heap
+ * under the gain they had when last evaluated, an upper bound of their gain now as long as
+ * gains only shrink when more is selected. Only the top candidate is re-evaluated: when it
+ * is still on top with a fresh gain, it is the greedy pick without looking at the others.
+ *
+ * The caller applies each pick to the state the gain function reads before asking for the
+ * next one.
+ */
+class LazyGreedySelector<T> {
+    interface MarginalGain<T> {
+        double of(T candidate);
+    }
+
+    private final MarginalGain<T> gain;
+    private final PriorityQueue<Entry<T>> heap = new PriorityQueue<>((a, b) -> Double.compare(b.bound, a.bound));
+    private int picks;
+    private int evaluations;
+    private double lastGain;
+
+    public LazyGreedySelector(MarginalGain<T> gain) {
+        this.gain = gain;
+    }
+
+    // A candidate evaluated now, whose gain is exact until the next pick
+    public void add(T candidate) {
+        evaluations++;
+        add(candidate, gain.of(candidate), picks);
+    }
+
+    // A candidate whose gain is bounded from above, evaluated again before it is picked
+    public void add(T candidate, double bound) {
+        add(candidate, bound, -1);
+    }
+
+    private void add(T candidate, double bound, int round) {
+        if (bound > 0) {
+            heap.add(new Entry<>(candidate, bound, round));
+        }
+    }
+
+    /**
+     * The candidate with the best marginal gain given the picks so far, null when no
+     * candidate gains anything any more.
+     */
+    public T next() {
+        while (!heap.isEmpty()) {
+            Entry<T> top = heap.poll();
+            if (top.round == picks) {
+                picks++;
+                lastGain = top.bound;
+                return top.candidate;
+            }
+            evaluations++;
+            double fresh = gain.of(top.candidate);
+            if (fresh > 0) {
+                heap.add(new Entry<>(top.candidate, fresh, picks));
+            }
+        }
+        return null;
+    }
+
+    // Marginal gain of the last pick
+    public double getLastGain() {
+        return lastGain;
+    }
+
+    public int getPicks() {
+        return picks;
+    }
+
+    public int getEvaluations() {
+        return evaluations;
+    }
+
+    private static class Entry<T> {
+        final T candidate;
+        final double bound;
+        final int round;
+
+        Entry(T candidate, double bound, int round) {
+            this.candidate = candidate;
+            this.bound = bound;
+            this.round = round;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+import java.util.*;
+
+/**
+ * Splits the astronauts of one type between the modules of that type, as a transportation
+ * problem over the small landing pad by module matrix. An astronaut scores speed points,
+ * 50 minus its days of travel, and balance points, 50 minus the arrivals its module already
+ * had this month, so every module has a convex cost per arrival.
+ *
+ * Solved exactly by successive shortest paths on the residual pad / module graph, one unit
+ * at a time while the balance points still decrease, a whole path at once afterwards. The
+ * graph has a few dozen nodes, so each path is a plain Bellman-Ford.
+ */
+class ModuleBalancer {
+    private static final int MAX_POINTS = MonthSimulator.MAX_POINTS;
+    private static final int INFINITE = Integer.MAX_VALUE / 2;
+
+    private final int pads;
+    private final int modules;
+    private final int[][] distance;
+    private final int[] remaining;
+    private final int[][] flow;
+    private final int[] load;
+
+    /**
+     * The distance of a pad to a module is -1 when its astronauts would not go there.
+     */
+    public ModuleBalancer(int[] supply, int[][] distance) {
+        this.pads = supply.length;
+        this.modules = pads == 0 ? 0 : distance[0].length;
+        this.distance = distance;
+        this.remaining = supply.clone();
+        this.flow = new int[pads][modules];
+        this.load = new int[modules];
+        solve();
+    }
+
+    // Astronauts of the pad sent to the module
+    public int getFlow(int pad, int module) {
+        return flow[pad][module];
+    }
+
+    public int getLoad(int module) {
+        return load[module];
+    }
+
+    // Astronauts of the pad no module can take
+    public int getUnassigned(int pad) {
+        return remaining[pad];
+    }
+
+    /**
+     * Speed and balance points of the split, counting hops as days.
+     */
+    public int getPoints() {
+        int points = 0;
+        for (int p = 0; p < pads; p++) {
+            for (int m = 0; m < modules; m++) {
+                points += flow[p][m] * (MAX_POINTS - distance[p][m]);
+            }
+        }
+        for (int m = 0; m < modules; m++) {
+            for (int i = 0; i < load[m]; i++) {
+                points += balanceGain(i);
+            }
+        }
+        return points;
+    }
+
+    private void solve() {
+        int[] padDistance = new int[pads];
+        int[] moduleDistance = new int[modules];
+        int[] padFrom = new int[pads];
+        int[] moduleFrom = new int[modules];
+        while (true) {
+            // Costs are days minus balance points, so the cheapest path scores the most
+            for (int p = 0; p < pads; p++) {
+                padDistance[p] = remaining[p] > 0 ? 0 : INFINITE;
+                padFrom[p] = -1;
+            }
+            Arrays.fill(moduleDistance, INFINITE);
+            boolean changed = true;
+            for (int round = 0; round <= pads + modules && changed; round++) {
+                changed = false;
+                for (int p = 0; p < pads; p++) {
+                    for (int m = 0; m < modules; m++) {
+                        if (distance[p][m] < 0) {
+                            continue;
+                        }
+                        if (padDistance[p] < INFINITE && padDistance[p] + distance[p][m] < moduleDistance[m]) {
+                            moduleDistance[m] = padDistance[p] + distance[p][m];
+                            moduleFrom[m] = p;
+                            changed = true;
+                        }
+                        if (flow[p][m] > 0 && moduleDistance[m] < INFINITE && moduleDistance[m] - distance[p][m] < padDistance[p]) {
+                            padDistance[p] = moduleDistance[m] - distance[p][m];
+                            padFrom[p] = m;
+                            changed = true;
+                        }
+                    }
+                }
+            }
+
+            int target = -1;
+            for (int m = 0; m < modules; m++) {
+                if (moduleDistance[m] < INFINITE && (target < 0
+                    || moduleDistance[m] - balanceGain(load[m]) < moduleDistance[target] - balanceGain(load[target]))) {
+                    target = m;
+                }
+            }
+            if (target < 0) {
+                return;
+            }
+
+            // Once the module gives no balance points, its cost no longer changes with the amount
+            int amount = balanceGain(load[target]) > 0 ? 1 : INFINITE;
+            int p = moduleFrom[target];
+            while (padFrom[p] >= 0) {
+                amount = Math.min(amount, flow[p][padFrom[p]]);
+                p = moduleFrom[padFrom[p]];
+            }
+            amount = Math.min(amount, remaining[p]);
+
+            remaining[p] -= amount;
+            load[target] += amount;
+            int m = target;
+            p = moduleFrom[m];
+            while (true) {
+                flow[p][m] += amount;
+                if (padFrom[p] < 0) {
+                    break;
+                }
+                m = padFrom[p];
+                flow[p][m] -= amount;
+                p = moduleFrom[m];
+            }
+        }
+    }
+
+    private static int balanceGain(int arrivals) {
+        return Math.max(0, MAX_POINTS - arrivals);
+    }
+}
@@ -0,0 +1,655 @@
+import java.util.*;
+
+/**
+ * Replays the 20 days of a lunar month on a primitive copy of the network, following the
+ * movement rules of the referee: teleporters, tube allocation by pod id, boarding by landing
+ * pad id, then launch. Buildings are indexed directly by their id.
+ */
+class MonthSimulator {
+    public static final int DAYS = 20;
+    public static final int MAX_POINTS = 50;
+    public static final int MAX_TYPES = 21; // module types go from 1 to 20
+    public static final int UNREACHABLE = 0xFF; // hop counts stay below the 150 buildings
+
+    private static final int MAX_TUBES_PER_BUILDING = 5;
+
+    private int size;
+    private int[] moduleType;
+    private int[][] padAstronauts;
+    private int[] teleporterExit;
+    private int[] teleporterEntrance;
+    private int[][] neighbors;
+    private int[][] neighborTubes;
+    private int[] degree;
+
+    private int tubeCount;
+    private int[] tubeCapacity;
+    private int[] tubeStart;
+
+    // Inverted index from tube to the pods traversing it, as (pod id, traversals from the
+    // start of the tube, traversals from its end) triples per cycle of a looping route, or
+    // over the month for a route that ends elsewhere
+    private int[][] tubePods;
+    private int[] tubePodCount;
+
+    private final TreeMap<Integer, CompiledRoute> podRoutes = new TreeMap<>();
+
+    private final byte[][] distanceCache = new byte[MAX_TYPES][];
+
+    private int groupCount;
+    private int[] groupPosition = new int[64];
+    private int[] groupType = new int[64];
+    private int[] groupSize = new int[64];
+    private int[] groupPod = new int[64];
+    private int[] nextGroup = new int[64];
+
+    private int delivered;
+    private int speedPoints;
+    private int balancePoints;
+    // Per pod of the last run, in the order of the routes: seats taken summed over the legs
+    // flown, and the legs flown
+    private CompiledRoute[] lastRoutes = new CompiledRoute[0];
+    private int[] passengerLegs = new int[0];
+    private int[] legsFlown = new int[0];
+
+    public MonthSimulator() {
+        this.size = 0;
+        this.moduleType = new int[0];
+        this.padAstronauts = new int[0][];
+        this.teleporterExit = new int[0];
+        this.teleporterEntrance = new int[0];
+        this.neighbors = new int[0][];
+        this.neighborTubes = new int[0][];
+        this.degree = new int[0];
+        this.tubeCapacity = new int[16];
+        this.tubeStart = new int[16];
+        this.tubePods = new int[16][];
+        this.tubePodCount = new int[16];
+    }
+
+    public void addModule(int id, int type) {
+        ensureSize(id + 1);
+        moduleType[id] = type;
+        distanceCache[type] = null;
+    }
+
+    public void addLandingPad(int id, int[] astronautTypes) {
+        ensureSize(id + 1);
+        moduleType[id] = 0;
+        padAstronauts[id] = astronautTypes.clone();
+    }
+
+    /**
+     * Adds a tube between two existing buildings and returns its index, or the index of the
+     * tube already joining them.
+     */
+    public int addTube(int a, int b, int capacity) {
+        int existing = tubeBetween(a, b);
+        if (existing >= 0) {
+            tubeCapacity[existing] = capacity;
+            return existing;
+        }
+        if (tubeCount == tubeCapacity.length) {
+            tubeCapacity = Arrays.copyOf(tubeCapacity, tubeCount * 2);
+            tubeStart = Arrays.copyOf(tubeStart, tubeCount * 2);
+            tubePods = Arrays.copyOf(tubePods, tubeCount * 2);
+            tubePodCount = Arrays.copyOf(tubePodCount, tubeCount * 2);
+        }
+        int tube = tubeCount++;
+        tubeCapacity[tube] = capacity;
+        tubeStart[tube] = a;
+        tubePods[tube] = new int[3 * 4];
+        tubePodCount[tube] = 0;
+        link(a, b, tube);
+        link(b, a, tube);
+        invalidateDistances();
+        return tube;
+    }
+
+    /**
+     * Removes the tube added last, which is also the last neighbor of both its ends. Tubes
+     * are permanent in the game, this only serves to roll back planned constructions.
+     */
+    public void removeLastTube() {
+        int tube = --tubeCount;
+        for (int id = 0; id < size; id++) {
+            if (degree[id] > 0 && neighborTubes[id][degree[id] - 1] == tube) {
+                degree[id]--;
+            }
+        }
+        invalidateDistances();
+    }
+
+    public void setTubeCapacity(int tube, int capacity) {
+        tubeCapacity[tube] = capacity;
+    }
+
+    public int getTubeCapacity(int tube) {
+        return tubeCapacity[tube];
+    }
+
+    public int getTubeCount() {
+        return tubeCount;
+    }
+
+    public int tubeBetween(int a, int b) {
+        if (a >= size) {
+            return -1;
+        }
+        for (int i = 0; i < degree[a]; i++) {
+            if (neighbors[a][i] == b) {
+                return neighborTubes[a][i];
+            }
+        }
+        return -1;
+    }
+
+    public int getDegree(int id) {
+        return id < size ? degree[id] : 0;
+    }
+
+    public int getNeighbor(int id, int index) {
+        return neighbors[id][index];
+    }
+
+    public void addTeleporter(int entrance, int exit) {
+        teleporterExit[entrance] = exit;
+        teleporterEntrance[exit] = entrance;
+        invalidateDistances();
+    }
+
+    public void removeTeleporter(int entrance) {
+        int exit = teleporterExit[entrance];
+        teleporterExit[entrance] = -1;
+        teleporterEntrance[exit] = -1;
+        invalidateDistances();
+    }
+
+    public int getTeleporterExit(int id) {
+        return id < size ? teleporterExit[id] : -1;
+    }
+
+    public boolean hasTeleporter(int id) {
+        return teleporterExit[id] >= 0 || teleporterEntrance[id] >= 0;
+    }
+
+    /**
+     * Sets the route of a pod, compiled against the current tubes. Tubes are never removed
+     * under a pod, rollbacks undo the pods built on a tube before the tube itself.
+     */
+    public void setPod(int podId, int[] stops) {
+        int[] legTubes = new int[Math.max(0, stops.length - 1)];
+        boolean[] legFromStart = new boolean[legTubes.length];
+        for (int i = 0; i < legTubes.length; i++) {
+            legTubes[i] = tubeBetween(stops[i], stops[i + 1]);
+            legFromStart[i] = legTubes[i] >= 0 && tubeStart[legTubes[i]] == stops[i];
+        }
+        CompiledRoute route = new CompiledRoute(podId, stops, legTubes, legFromStart);
+        CompiledRoute previous = podRoutes.put(podId, route);
+        if (previous != null) {
+            indexRoute(previous, -1);
+        }
+        indexRoute(route, 1);
+    }
+
+    public void removePod(int podId) {
+        CompiledRoute previous = podRoutes.remove(podId);
+        if (previous != null) {
+            indexRoute(previous, -1);
+        }
+    }
+
+    public CompiledRoute getRoute(int podId) {
+        return podRoutes.get(podId);
+    }
+
+    // Compiled pod routes by increasing pod id, the order of tube priority
+    public Collection<CompiledRoute> getRoutes() {
+        return podRoutes.values();
+    }
+
+    // Number of pods whose route goes through the tube
+    public int getTubePodCount(int tube) {
+        return tubePodCount[tube];
+    }
+
+    /**
+     * Whether a tube along the stops already carries as many pods as its capacity, so that
+     * one more pod there would have to win the tube by its id.
+     */
+    public boolean isContested(int[] stops) {
+        for (int i = 0; i + 1 < stops.length; i++) {
+            int tube = tubeBetween(stops[i], stops[i + 1]);
+            if (tube >= 0 && tubePodCount[tube] >= tubeCapacity[tube]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Times the tube is entered from the given end in one cycle of every pod route.
+     */
+    public int getTubeTraversals(int tube, int from) {
+        int column = from == tubeStart[tube] ? 1 : 2;
+        int traversals = 0;
+        for (int i = 0; i < tubePodCount[tube]; i++) {
+            traversals += tubePods[tube][3 * i + column];
+        }
+        return traversals;
+    }
+
+    /**
+     * Number of pods entering the tube from the given end at least once per cycle.
+     */
+    public int getPodsLeavingBy(int tube, int from) {
+        int column = from == tubeStart[tube] ? 1 : 2;
+        int pods = 0;
+        for (int i = 0; i < tubePodCount[tube]; i++) {
+            if (tubePods[tube][3 * i + column] > 0) {
+                pods++;
+            }
+        }
+        return pods;
+    }
+
+    /**
+     * Adds or removes the traversals of every leg of a route, each in its own direction.
+     */
+    private void indexRoute(CompiledRoute route, int sign) {
+        for (int step = 0; step < route.legCount(); step++) {
+            int tube = route.getLegTube(step);
+            if (tube >= 0) {
+                boolean fromStart = route.isLegFromStart(step);
+                addTraversals(tube, route.getPodId(), fromStart ? sign : 0, fromStart ? 0 : sign);
+            }
+        }
+    }
+
+    private void addTraversals(int tube, int podId, int fromStart, int fromEnd) {
+        int[] entries = tubePods[tube];
+        int count = tubePodCount[tube];
+        int index = 0;
+        while (index < count && entries[3 * index] != podId) {
+            index++;
+        }
+        if (index == count) {
+            if (3 * count == entries.length) {
+                entries = tubePods[tube] = Arrays.copyOf(entries, 6 * count);
+            }
+            entries[3 * index] = podId;
+            entries[3 * index + 1] = 0;
+            entries[3 * index + 2] = 0;
+            tubePodCount[tube] = ++count;
+        }
+        entries[3 * index + 1] += fromStart;
+        entries[3 * index + 2] += fromEnd;
+        if (entries[3 * index + 1] <= 0 && entries[3 * index + 2] <= 0) {
+            // Last traversal gone, the last entry takes its place
+            count--;
+            System.arraycopy(entries, 3 * count, entries, 3 * index, 3);
+            tubePodCount[tube] = count;
+        }
+    }
+
+    public boolean hasPod(int podId) {
+        return podRoutes.containsKey(podId);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getModuleType(int id) {
+        return id < size ? moduleType[id] : -1;
+    }
+
+    /**
+     * Hop distances to the given module type as unsigned bytes, UNREACHABLE when no module
+     * of the type can be reached. A field is kept until a tube or teleporter is added or
+     * removed, or a module of its type is added.
+     */
+    public byte[] getDistances(int type) {
+        if (distanceCache[type] == null || distanceCache[type].length != size) {
+            distanceCache[type] = computeDistances(type);
+        }
+        return distanceCache[type];
+    }
+
+    private void invalidateDistances() {
+        Arrays.fill(distanceCache, null);
+    }
+
+    public int getDistance(int type, int id) {
+        return id < size ? getDistances(type)[id] & 0xFF : UNREACHABLE;
+    }
+
+    /**
+     * Hop distance from every building to the closest module of the given type, by a BFS
+     * from all of them at once. Teleporters count as zero tubes, so an entrance is never
+     * further than its exit.
+     */
+    public byte[] computeDistances(int type) {
+        byte[] distance = new byte[size];
+        Arrays.fill(distance, (byte) UNREACHABLE);
+        int[] queue = new int[size];
+        int tail = 0;
+        for (int id = 0; id < size; id++) {
+            if (moduleType[id] == type) {
+                distance[id] = 0;
+                queue[tail++] = id;
+            }
+        }
+        spreadDistances(distance, queue, tail);
+        return distance;
+    }
+
+    /**
+     * Hop distance from every building to the given module alone, the way astronauts would
+     * count it if it were the only module of its type.
+     */
+    public byte[] computeModuleDistances(int module) {
+        byte[] distance = new byte[size];
+        Arrays.fill(distance, (byte) UNREACHABLE);
+        int[] queue = new int[size];
+        distance[module] = 0;
+        queue[0] = module;
+        spreadDistances(distance, queue, 1);
+        return distance;
+    }
+
+    private void spreadDistances(byte[] distance, int[] queue, int tail) {
+        int head = 0;
+        for (int i = 0; i < tail; i++) {
+            tail = reachEntrance(queue[i], distance, queue, tail);
+        }
+
+        while (head < tail) {
+            int current = queue[head++];
+            byte next = (byte) ((distance[current] & 0xFF) + 1);
+            for (int i = 0; i < degree[current]; i++) {
+                int neighbor = neighbors[current][i];
+                if (distance[neighbor] == (byte) UNREACHABLE) {
+                    distance[neighbor] = next;
+                    queue[tail++] = neighbor;
+                    tail = reachEntrance(neighbor, distance, queue, tail);
+                }
+            }
+        }
+    }
+
+    private int reachEntrance(int exit, byte[] distance, int[] queue, int tail) {
+        int entrance = teleporterEntrance[exit];
+        if (entrance >= 0 && distance[entrance] == (byte) UNREACHABLE) {
+            distance[entrance] = distance[exit];
+            queue[tail++] = entrance;
+        }
+        return tail;
+    }
+
+    /**
+     * Runs a whole month from the starting position of every pod and returns the points
+     * scored. The counters of the last run stay available through the getters.
+     *
+     * Astronauts are simulated in groups of consecutive astronauts of the same landing pad
+     * and type, which behave identically, in landing pad order and then in the order of the
+     * input, so astronauts board in the order the game lists them. A group is split when a
+     * pod only has room for part of it, so the cost of a month grows with the number of
+     * groups rather than astronauts.
+     */
+    public int simulate() {
+        groupCount = 0;
+        int head = -1;
+        int tail = -1;
+        for (int id = 0; id < size; id++) {
+            if (padAstronauts[id] == null) {
+                continue;
+            }
+            int[] astronauts = padAstronauts[id];
+            for (int start = 0, end; start < astronauts.length; start = end) {
+                end = start + 1;
+                while (end < astronauts.length && astronauts[end] == astronauts[start]) {
+                    end++;
+                }
+                int group = newGroup(id, astronauts[start], end - start);
+                if (tail < 0) {
+                    head = group;
+                } else {
+                    nextGroup[tail] = group;
+                }
+                tail = group;
+            }
+        }
+
+        int podCount = podRoutes.size();
+        CompiledRoute[] routes = podRoutes.values().toArray(new CompiledRoute[0]);
+        int[] step = new int[podCount];
+        int[] destination = new int[podCount];
+        int[] load = new int[podCount];
+        int[] nextPodAt = new int[podCount];
+        int[] firstPodAt = new int[size];
+        int[] tubeUse = new int[tubeCount];
+        int[] arrivals = new int[size];
+        lastRoutes = routes;
+        passengerLegs = new int[podCount];
+        legsFlown = new int[podCount];
+
+        delivered = 0;
+        speedPoints = 0;
+        balancePoints = 0;
+
+        for (int day = 0; day < DAYS; day++) {
+            // Teleporters
+            for (int g = head; g >= 0; g = nextGroup[g]) {
+                if (groupSize[g] == 0) {
+                    continue;
+                }
+                byte[] distance = getDistances(groupType[g]);
+                int exit = teleporterExit[groupPosition[g]];
+                if (exit >= 0 && (distance[exit] & 0xFF) <= (distance[groupPosition[g]] & 0xFF)) {
+                    groupPosition[g] = exit;
+                    if (moduleType[exit] == groupType[g]) {
+                        arrive(exit, day, groupSize[g], arrivals);
+                        groupSize[g] = 0;
+                    }
+                }
+            }
+
+            // Pods enter their next tube, smallest id first
+            Arrays.fill(tubeUse, 0);
+            for (int p = 0; p < podCount; p++) {
+                destination[p] = allocateTube(routes[p], step, p, tubeUse);
+            }
+            Arrays.fill(firstPodAt, -1);
+            for (int p = podCount - 1; p >= 0; p--) {
+                if (destination[p] >= 0) {
+                    int from = routes[p].getStops()[step[p]];
+                    nextPodAt[p] = firstPodAt[from];
+                    firstPodAt[from] = p;
+                }
+                load[p] = 0;
+            }
+
+            // Astronauts board the first pods that strictly lower their distance
+            int previous = -1;
+            for (int g = head; g >= 0; previous = g, g = nextGroup[g]) {
+                groupPod[g] = -1;
+                if (groupSize[g] == 0 || firstPodAt[groupPosition[g]] < 0) {
+                    continue;
+                }
+                byte[] distance = getDistances(groupType[g]);
+                int current = distance[groupPosition[g]] & 0xFF;
+                for (int p = firstPodAt[groupPosition[g]]; p >= 0; p = nextPodAt[p]) {
+                    int seats = TransportPod.CAPACITY - load[p];
+                    if (seats <= 0 || (distance[destination[p]] & 0xFF) >= current) {
+                        continue;
+                    }
+                    if (seats >= groupSize[g]) {
+                        load[p] += groupSize[g];
+                        groupPod[g] = p;
+                        break;
+                    }
+                    // Only part of the group fits: the boarding part goes in front of the rest
+                    int boarding = newGroup(groupPosition[g], groupType[g], seats);
+                    groupPod[boarding] = p;
+                    groupSize[g] -= seats;
+                    load[p] += seats;
+                    nextGroup[boarding] = g;
+                    if (previous < 0) {
+                        head = boarding;
+                    } else {
+                        nextGroup[previous] = boarding;
+                    }
+                    previous = boarding;
+                }
+            }
+
+            // Launch
+            for (int p = 0; p < podCount; p++) {
+                if (destination[p] >= 0) {
+                    step[p]++;
+                    legsFlown[p]++;
+                    passengerLegs[p] += load[p];
+                }
+            }
+            // Groups that arrived leave the list, and a group next to one of the same type at
+            // the same building joins it, since they behave identically from now on
+            int kept = -1;
+            for (int g = head; g >= 0; g = nextGroup[g]) {
+                if (groupSize[g] > 0 && groupPod[g] >= 0) {
+                    int building = destination[groupPod[g]];
+                    groupPosition[g] = building;
+                    if (moduleType[building] == groupType[g]) {
+                        arrive(building, day + 1, groupSize[g], arrivals);
+                        groupSize[g] = 0;
+                    }
+                }
+                if (groupSize[g] > 0 && kept >= 0 && groupPosition[kept] == groupPosition[g] && groupType[kept] == groupType[g]) {
+                    groupSize[kept] += groupSize[g];
+                    groupSize[g] = 0;
+                }
+                if (groupSize[g] == 0) {
+                    if (kept < 0) {
+                        head = nextGroup[g];
+                    } else {
+                        nextGroup[kept] = nextGroup[g];
+                    }
+                } else {
+                    kept = g;
+                }
+            }
+        }
+
+        return speedPoints + balancePoints;
+    }
+
+    private int newGroup(int position, int type, int count) {
+        if (groupCount == groupSize.length) {
+            int capacity = groupCount * 2;
+            groupPosition = Arrays.copyOf(groupPosition, capacity);
+            groupType = Arrays.copyOf(groupType, capacity);
+            groupSize = Arrays.copyOf(groupSize, capacity);
+            groupPod = Arrays.copyOf(groupPod, capacity);
+            nextGroup = Arrays.copyOf(nextGroup, capacity);
+        }
+        int group = groupCount++;
+        groupPosition[group] = position;
+        groupType[group] = type;
+        groupSize[group] = count;
+        groupPod[group] = -1;
+        nextGroup[group] = -1;
+        return group;
+    }
+
+    private int allocateTube(CompiledRoute route, int[] step, int pod, int[] tubeUse) {
+        int last = route.legCount();
+        if (step[pod] == last && last > 0 && route.isLoop()) {
+            step[pod] = 0;
+        }
+        if (step[pod] >= last) {
+            return -1;
+        }
+        int tube = route.getLegTube(step[pod]);
+        if (tube < 0 || tubeUse[tube] >= tubeCapacity[tube]) {
+            return -1;
+        }
+        tubeUse[tube]++;
+        return route.getStops()[step[pod] + 1];
+    }
+
+    private void arrive(int module, int days, int count, int[] arrivals) {
+        // The balancing points of the group drop by one for every astronaut already there
+        int rewarded = Math.max(0, Math.min(count, MAX_POINTS - arrivals[module]));
+        delivered += count;
+        speedPoints += count * (MAX_POINTS - days);
+        balancePoints += rewarded * (MAX_POINTS - arrivals[module]) - rewarded * (rewarded - 1) / 2;
+        arrivals[module] += count;
+    }
+
+    public int getDelivered() {
+        return delivered;
+    }
+
+    public int getSpeedPoints() {
+        return speedPoints;
+    }
+
+    public int getBalancePoints() {
+        return balancePoints;
+    }
+
+    /**
+     * Share of the seats of the pod taken over the legs it flew in the last run, -1 when the
+     * pod was not part of it or never left.
+     */
+    public double getPodLoad(int podId) {
+        for (int p = 0; p < lastRoutes.length; p++) {
+            if (lastRoutes[p].getPodId() == podId) {
+                return legsFlown[p] == 0 ? -1 : (double) passengerLegs[p] / (legsFlown[p] * TransportPod.CAPACITY);
+            }
+        }
+        return -1;
+    }
+
+    // Seats taken by the pod summed over the legs it flew in the last run
+    public int getPassengerLegs(int podId) {
+        for (int p = 0; p < lastRoutes.length; p++) {
+            if (lastRoutes[p].getPodId() == podId) {
+                return passengerLegs[p];
+            }
+        }
+        return 0;
+    }
+
+    private void link(int from, int to, int tube) {
+        if (degree[from] == neighbors[from].length) {
+            neighbors[from] = Arrays.copyOf(neighbors[from], degree[from] * 2);
+            neighborTubes[from] = Arrays.copyOf(neighborTubes[from], degree[from] * 2);
+        }
+        neighbors[from][degree[from]] = to;
+        neighborTubes[from][degree[from]] = tube;
+        degree[from]++;
+    }
+
+    private void ensureSize(int required) {
+        if (required <= size) {
+            return;
+        }
+        int newSize = Math.max(required, size * 2);
+        moduleType = Arrays.copyOf(moduleType, newSize);
+        padAstronauts = Arrays.copyOf(padAstronauts, newSize);
+        teleporterExit = Arrays.copyOf(teleporterExit, newSize);
+        teleporterEntrance = Arrays.copyOf(teleporterEntrance, newSize);
+        neighbors = Arrays.copyOf(neighbors, newSize);
+        neighborTubes = Arrays.copyOf(neighborTubes, newSize);
+        degree = Arrays.copyOf(degree, newSize);
+        for (int id = size; id < newSize; id++) {
+            moduleType[id] = -1;
+            teleporterExit[id] = -1;
+            teleporterEntrance[id] = -1;
+            neighbors[id] = new int[MAX_TUBES_PER_BUILDING];
+            neighborTubes[id] = new int[MAX_TUBES_PER_BUILDING];
+        }
+        size = newSize;
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.*;
+
+/**
+ * One action of a turn plan, kept in a parsed form so that it can be applied to and rolled
+ * back from the City while searching. toString gives the command sent to the game.
+ */
+class PlanAction {
+    enum Type { TUBE, UPGRADE, TELEPORT, POD, DESTROY }
+
+    private final Type type;
+    private final int first;
+    private final int second;
+    private final int[] stops;
+
+    private PlanAction(Type type, int first, int second, int[] stops) {
+        this.type = type;
+        this.first = first;
+        this.second = second;
+        this.stops = stops;
+    }
+
+    public static PlanAction tube(int buildingId1, int buildingId2) {
+        return new PlanAction(Type.TUBE, buildingId1, buildingId2, null);
+    }
+
+    public static PlanAction upgrade(int buildingId1, int buildingId2) {
+        return new PlanAction(Type.UPGRADE, buildingId1, buildingId2, null);
+    }
+
+    public static PlanAction teleport(int entranceId, int exitId) {
+        return new PlanAction(Type.TELEPORT, entranceId, exitId, null);
+    }
+
+    public static PlanAction pod(int podId, int[] stops) {
+        return new PlanAction(Type.POD, podId, -1, stops.clone());
+    }
+
+    public static PlanAction destroy(int podId) {
+        return new PlanAction(Type.DESTROY, podId, -1, null);
+    }
+
+    /**
+     * Parses a command in the game format, returns null for WAIT or anything unknown.
+     */
+    public static PlanAction parse(String command) {
+        String[] parts = command.trim().split("\\s+");
+        try {
+            switch (parts[0]) {
+                case "TUBE": return tube(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+                case "UPGRADE": return upgrade(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+                case "TELEPORT": return teleport(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+                case "DESTROY": return destroy(Integer.parseInt(parts[1]));
+                case "POD":
+                    int[] stops = new int[parts.length - 2];
+                    for (int i = 0; i < stops.length; i++) {
+                        stops[i] = Integer.parseInt(parts[i + 2]);
+                    }
+                    return pod(Integer.parseInt(parts[1]), stops);
+                default: return null;
+            }
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    // Building id for tubes, upgrades and teleporters, pod id for pods
+    public int getFirst() {
+        return first;
+    }
+
+    public int getSecond() {
+        return second;
+    }
+
+    public int getPodId() {
+        return first;
+    }
+
+    public int[] getStops() {
+        return stops;
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case POD:
+                StringBuilder sb = new StringBuilder("POD ").append(first);
+                for (int stop : stops) {
+                    sb.append(" ").append(stop);
+                }
+                return sb.toString();
+            case DESTROY:
+                return "DESTROY " + first;
+            default:
+                return type + " " + first + " " + second;
+        }
+    }
+}
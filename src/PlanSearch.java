@@ -0,0 +1,374 @@
+import java.util.*;
+
+/**
+ * Simulated annealing over the actions of a turn. A candidate plan is kept applied on the
+ * City, moves add, drop or replace one action, and only the actions after the changed one
+ * are rolled back and re-applied. Every candidate is scored with a month simulation counted
+ * for each month left, plus the banking value of the resources left.
+ *
+ * Moves are drawn zone by zone: a tube, a pod loop or a teleporter entrance is taken in one
+ * zone of the partition, so each move picks among a few dozen buildings however large the
+ * city, and a quarter of the tubes and loops work on the contracted graph instead, over the
+ * links between zones. Teleporters always leave their zone, where tubes are too slow.
+ *
+ * Before a new state is simulated, the SurrogateEvaluator estimates how much its month
+ * score moves from the current plan's. When even that estimate, plus a few times the
+ * error the estimates have shown so far, would almost surely be rejected at the current
+ * temperature, the state is rejected without a simulation.
+ */
+class PlanSearch {
+    private static final int MAX_WALK_LENGTH = 6;
+    private static final double START_TEMPERATURE = 200.0;
+    private static final double END_TEMPERATURE = 1.0;
+    // One move in this many works across zones
+    private static final int INTER_ZONE_ODDS = 4;
+    // Pruned when the acceptance probability is below e^-3, even with that many errors of margin
+    private static final double PRUNE_TEMPERATURES = 3.0;
+    private static final double PRUNE_ERRORS = 2.0;
+    // Simulations compared before the surrogate error is trusted
+    private static final int MIN_ERROR_SAMPLES = 20;
+
+    private final City city;
+    private final TranspositionTable scores;
+    private final int monthsLeft;
+    private final double resourceValue;
+    private final Random random;
+    private final List<Building> buildings;
+    private final List<int[]> tubeCandidates;
+    private final ZonePartition zones;
+    private final List<PlanAction> plan;
+    private final List<Integer> marks;
+    private int evaluations;
+    private int lastMonthScore;
+    private int baseMonthScore;
+    private int bestMonthScore;
+    private int bestResources;
+
+    private final SurrogateEvaluator surrogate;
+    // Estimate of the last state evaluated, -1 when it came from the transposition table, and
+    // of the current plan, -1 until the seed plan is estimated
+    private int lastEstimate;
+    private int currentEstimate;
+    private int currentMonthScore;
+    private int pruned;
+    private int errorSamples;
+    private long estimateError;
+    private long deltaError;
+
+    /**
+     * Tubes are only searched among the given building id pairs, split by the zones.
+     */
+    public PlanSearch(City city, List<int[]> tubeCandidates, ZonePartition zones, TranspositionTable scores, int monthsLeft, double resourceValue, long seed) {
+        this.city = city;
+        this.scores = scores;
+        this.monthsLeft = Math.max(1, monthsLeft);
+        this.resourceValue = resourceValue;
+        this.random = new Random(seed);
+        this.buildings = new ArrayList<>(city.getBuildings());
+        this.tubeCandidates = tubeCandidates;
+        this.zones = zones;
+        this.plan = new ArrayList<>();
+        this.marks = new ArrayList<>();
+        this.surrogate = new SurrogateEvaluator(city.getDemandIndex());
+        this.currentEstimate = -1;
+    }
+
+    /**
+     * Improves the seed plan until the deadline and returns the best plan found. The city is
+     * left as it was before the search.
+     */
+    public List<PlanAction> search(List<PlanAction> seed, long deadlineNanos) {
+        scores.clear();
+        int baseMark = city.mark();
+        evaluate(Double.NEGATIVE_INFINITY);
+        baseMonthScore = lastMonthScore;
+        rebuildFrom(0, seed);
+        double currentScore = evaluate(Double.NEGATIVE_INFINITY);
+        currentEstimate = lastEstimate >= 0 ? lastEstimate : surrogate.estimate(city.getSimulator());
+        currentMonthScore = lastMonthScore;
+        double bestScore = currentScore;
+        List<PlanAction> best = new ArrayList<>(plan);
+        bestMonthScore = lastMonthScore;
+        bestResources = city.getResources();
+
+        long start = System.nanoTime();
+        long duration = Math.max(1, deadlineNanos - start);
+        long now;
+        while ((now = System.nanoTime()) < deadlineNanos && !buildings.isEmpty()) {
+            double progress = (double) (now - start) / duration;
+            double temperature = monthsLeft * START_TEMPERATURE * Math.pow(END_TEMPERATURE / START_TEMPERATURE, progress);
+
+            int index = plan.size();
+            List<PlanAction> previousSuffix = null;
+            int move = random.nextInt(10);
+            if (move < 3 && !plan.isEmpty()) {
+                // Drop one action, the following ones are re-applied when still valid
+                index = random.nextInt(plan.size());
+                previousSuffix = new ArrayList<>(plan.subList(index, plan.size()));
+                rebuildFrom(index, previousSuffix.subList(1, previousSuffix.size()));
+            } else if (move < 4 && hasPlannedPod()) {
+                index = randomPlannedPod();
+                PlanAction rerouted = podOn(randomWalk(randomZone()), plan.get(index).getPodId());
+                if (rerouted == null) {
+                    continue;
+                }
+                previousSuffix = new ArrayList<>(plan.subList(index, plan.size()));
+                List<PlanAction> suffix = new ArrayList<>(previousSuffix);
+                suffix.set(0, rerouted);
+                rebuildFrom(index, suffix);
+            } else {
+                rebuildFrom(index, randomAddition());
+                if (plan.size() == index) {
+                    continue;
+                }
+            }
+
+            double score = evaluate(currentScore - PRUNE_TEMPERATURES * temperature);
+            double delta = score - currentScore;
+            if (delta >= 0 || random.nextDouble() < Math.exp(delta / temperature)) {
+                currentScore = score;
+                // A state from the transposition table was not estimated, the city is in it now
+                currentEstimate = lastEstimate >= 0 ? lastEstimate : surrogate.estimate(city.getSimulator());
+                currentMonthScore = lastMonthScore;
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = new ArrayList<>(plan);
+                    bestMonthScore = lastMonthScore;
+                    bestResources = city.getResources();
+                }
+            } else if (previousSuffix != null) {
+                rebuildFrom(index, previousSuffix);
+            } else {
+                rebuildFrom(index, Collections.emptyList());
+            }
+        }
+
+        city.rollback(baseMark);
+        plan.clear();
+        marks.clear();
+        return best;
+    }
+
+    public int getEvaluations() {
+        return evaluations;
+    }
+
+    // Simulated score of the month without any new action
+    public int getBaseMonthScore() {
+        return baseMonthScore;
+    }
+
+    public int getBestMonthScore() {
+        return bestMonthScore;
+    }
+
+    // States rejected on the surrogate estimate alone
+    public int getPruned() {
+        return pruned;
+    }
+
+    // Mean absolute error of the surrogate on the month score, and on its change from the current plan
+    public double getEstimateError() {
+        return errorSamples == 0 ? 0 : (double) estimateError / errorSamples;
+    }
+
+    public double getDeltaError() {
+        return errorSamples == 0 ? 0 : (double) deltaError / errorSamples;
+    }
+
+    // Resources left once the best plan is applied
+    public int getBestResources() {
+        return bestResources;
+    }
+
+    /**
+     * Network states reached again through another order of actions only cost a lookup in
+     * the transposition table. A new state whose estimated score stays under the floor by
+     * more than the usual surrogate error scores negative infinity without a simulation.
+     */
+    private double evaluate(double floor) {
+        evaluations++;
+        long hash = city.getStateHash();
+        int monthScore = scores.get(hash);
+        lastEstimate = -1;
+        if (monthScore == TranspositionTable.MISSING) {
+            MonthSimulator sim = city.getSimulator();
+            lastEstimate = surrogate.estimate(sim);
+            if (currentEstimate >= 0 && errorSamples >= MIN_ERROR_SAMPLES) {
+                double predicted = (double) (currentMonthScore + lastEstimate - currentEstimate) * monthsLeft + resourceValue * city.getResources();
+                if (predicted + PRUNE_ERRORS * getDeltaError() * monthsLeft < floor) {
+                    pruned++;
+                    return Double.NEGATIVE_INFINITY;
+                }
+            }
+            monthScore = sim.simulate();
+            scores.put(hash, monthScore);
+            if (currentEstimate >= 0) {
+                errorSamples++;
+                estimateError += Math.abs(lastEstimate - monthScore);
+                deltaError += Math.abs((lastEstimate - currentEstimate) - (monthScore - currentMonthScore));
+            }
+        }
+        lastMonthScore = monthScore;
+        return (double) monthScore * monthsLeft + resourceValue * city.getResources();
+    }
+
+    /**
+     * Rolls the plan back to the given index, then applies the given actions after it,
+     * skipping the ones that are no longer valid.
+     */
+    private void rebuildFrom(int index, List<PlanAction> suffix) {
+        if (index < marks.size()) {
+            city.rollback(marks.get(index));
+            plan.subList(index, plan.size()).clear();
+            marks.subList(index, marks.size()).clear();
+        }
+        for (PlanAction action : new ArrayList<>(suffix)) {
+            int mark = city.mark();
+            if (city.apply(action)) {
+                marks.add(mark);
+                plan.add(action);
+            }
+        }
+    }
+
+    private List<PlanAction> randomAddition() {
+        int zone = randomZone();
+        List<Building> members = zone < 0 ? buildings : zones.getMembers(zone);
+        Building building = members.get(random.nextInt(members.size()));
+        switch (random.nextInt(5)) {
+            case 0:
+            case 1: {
+                List<int[]> edges = zone < 0 ? zones.getLinks() : zones.getZoneEdges(zone);
+                if (edges.isEmpty()) {
+                    edges = tubeCandidates;
+                }
+                if (edges.isEmpty()) {
+                    return Collections.emptyList();
+                }
+                int[] edge = edges.get(random.nextInt(edges.size()));
+                return List.of(PlanAction.tube(edge[0], edge[1]));
+            }
+            case 2: {
+                List<Tube> tubes = city.getTubes();
+                if (tubes.isEmpty()) {
+                    return Collections.emptyList();
+                }
+                Tube tube = tubes.get(random.nextInt(tubes.size()));
+                return List.of(PlanAction.upgrade(tube.getStart().getId(), tube.getEnd().getId()));
+            }
+            case 3: {
+                Building exit = buildings.get(random.nextInt(buildings.size()));
+                int zoneCount = zones.getZoneCount();
+                if (zoneCount > 1) {
+                    // Exit in any zone but the entrance's
+                    int from = zones.getZone(building.getId());
+                    int to = random.nextInt(zoneCount - 1);
+                    List<Building> exits = zones.getMembers(to >= from ? to + 1 : to);
+                    exit = exits.get(random.nextInt(exits.size()));
+                }
+                return List.of(PlanAction.teleport(building.getId(), exit.getId()));
+            }
+            default: {
+                List<TransportPod> pods = city.getPods();
+                if (!pods.isEmpty() && random.nextInt(3) == 0) {
+                    // Rebuild an existing pod on another route
+                    int podId = pods.get(random.nextInt(pods.size())).getId();
+                    int[] stops = randomWalk(zone);
+                    if (stops == null) {
+                        return Collections.emptyList();
+                    }
+                    // Rebuilt on a contested route, the pod takes a lower id when one is free
+                    int lowest = city.getPodIds().lowestFree();
+                    boolean renumber = lowest >= 0 && lowest < podId && city.getSimulator().isContested(stops);
+                    return List.of(PlanAction.destroy(podId), PlanAction.pod(renumber ? lowest : podId, stops));
+                }
+                int[] stops = randomWalk(zone);
+                if (stops == null) {
+                    return Collections.emptyList();
+                }
+                PodIdAllocator podIds = city.getPodIds();
+                PlanAction pod = podOn(stops, city.getSimulator().isContested(stops) ? podIds.lowestFree() : podIds.highestFree());
+                return pod == null ? Collections.emptyList() : List.of(pod);
+            }
+        }
+    }
+
+    private PlanAction podOn(int[] stops, int podId) {
+        return stops == null || podId < 1 ? null : PlanAction.pod(podId, stops);
+    }
+
+    // A zone drawn at random, or -1 for a move across zones
+    private int randomZone() {
+        if (zones.getZoneCount() <= 1 || random.nextInt(INTER_ZONE_ODDS) == 0) {
+            return -1;
+        }
+        return random.nextInt(zones.getZoneCount());
+    }
+
+    /**
+     * A random walk along the tubes that comes back the same way, so that every tube of the
+     * loop is traversed in both directions. Within a zone, the walk stops where its tubes
+     * only leave the zone. Null when the start has no tube.
+     */
+    private int[] randomWalk(int zone) {
+        MonthSimulator sim = city.getSimulator();
+        List<Building> members = zone < 0 ? buildings : zones.getMembers(zone);
+        int start = members.get(random.nextInt(members.size())).getId();
+        if (sim.getDegree(start) == 0) {
+            return null;
+        }
+        int length = 1 + random.nextInt(MAX_WALK_LENGTH);
+        int[] walk = new int[length + 1];
+        walk[0] = start;
+        int steps = 0;
+        int[] choices = new int[City.MAX_TUBES_PER_BUILDING];
+        while (steps < length) {
+            int current = walk[steps];
+            int count = 0;
+            for (int i = 0; i < sim.getDegree(current) && count < choices.length; i++) {
+                int neighbor = sim.getNeighbor(current, i);
+                if (zone < 0 || zones.getZone(neighbor) == zone) {
+                    choices[count++] = neighbor;
+                }
+            }
+            if (count == 0) {
+                break;
+            }
+            int next = choices[random.nextInt(count)];
+            if (steps > 0 && next == walk[steps - 1] && count > 1) {
+                continue;
+            }
+            walk[++steps] = next;
+        }
+        if (steps == 0) {
+            return null;
+        }
+        length = steps;
+        int[] stops = new int[2 * length + 1];
+        for (int i = 0; i <= length; i++) {
+            stops[i] = walk[i];
+            stops[2 * length - i] = walk[i];
+        }
+        return stops;
+    }
+
+    private boolean hasPlannedPod() {
+        for (PlanAction action : plan) {
+            if (action.getType() == PlanAction.Type.POD) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int randomPlannedPod() {
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < plan.size(); i++) {
+            if (plan.get(i).getType() == PlanAction.Type.POD) {
+                indices.add(i);
+            }
+        }
+        return indices.get(random.nextInt(indices.size()));
+    }
+}
@@ -1,43 +1,60 @@
 import java.util.*;
 
 class Player {
-    private ResourceManager resourceManager;
-    private PodManager podManager;
-    private static City city;
-    private static TransportationAI ai;
-    private static GameState gameState;
+    private final City city;
+    private final TransportationAI ai;
+    private final GameState gameState;
+
+    Player() {
+        this(AIParameters.DEFAULT);
+    }
+
+    Player(AIParameters parameters) {
+        this.city = new City();
+        this.gameState = new GameState();
+        this.ai = new TransportationAI(city, gameState, parameters);
+    }
 
     public static void main(String[] args) {
         Scanner in = new Scanner(System.in);
-        city = new City();
-        ai = new TransportationAI(city);
-        gameState = new GameState();
+        Player player = new Player();
+        player.ai.setParallelScans(true);
 
         // Game loop
         while (true) {
-            parseInput(in);
-            List<String> actions = ai.makeDecisions();
-
-            if (actions.isEmpty()) {
-                // If no actions, wait
-                System.out.println("WAIT");
-            }else{
-            // Output actions
-                System.out.println(String.join(";", actions));
-            }
+            System.out.println(player.playTurn(in));
             System.out.flush();
 
-            // The simulation of days is handled by the game engine in Codingame
-            // We don't need to simulate days here
-            gameState.incrementMonth();
-
             // Debug output
-            System.err.println(gameState.getGameStatus());
+            System.err.println(player.gameState.getGameStatus());
         }
     }
 
-    private static void parseInput(Scanner in) {
-        resources = in.nextInt();
+    /**
+     * Plays a single turn from a complete turn input, so that games can be run in-process
+     * by the local tools without going through System.in.
+     */
+    String playTurn(String turnInput) {
+        return playTurn(new Scanner(turnInput));
+    }
+
+    private String playTurn(Scanner in) {
+        // The time of the turn runs from its first line, which the first read waits for
+        int resources = in.nextInt();
+        long turnStart = System.nanoTime();
+        parseInput(resources, in);
+        List<String> actions = ai.makeDecisions(turnStart);
+
+        // The simulation of days is handled by the game engine in Codingame
+        // We don't need to simulate days here
+        gameState.incrementMonth();
+
+        // If no actions, wait
+        return actions.isEmpty() ? "WAIT" : String.join(";", actions);
+    }
+
+    private void parseInput(int resources, Scanner in) {
+        city.setResources(resources);
         int numTravelRoutes = in.nextInt();
 
         // Parse travel routes (tubes and teleporters)
@@ -50,22 +67,24 @@ class Player {
                 city.addOrUpdateTube(buildingId1, buildingId2, capacity);
             } else {
                 // Teleporter (capacity == 0)
-                city.addTeleporter(new Teleporter(city.getBuildingById(buildingId1), city.getBuildingById(buildingId2)));
+                city.addOrUpdateTeleporter(buildingId1, buildingId2);
             }
         }
 
-        // Parse pods
+        // Parse pods, the input always lists every pod still in service
         int numPods = in.nextInt();
+        Set<Integer> podIds = new HashSet<>();
         for (int i = 0; i < numPods; i++) {
             int podId = in.nextInt();
             int numStops = in.nextInt();
-            List<Building> path = new ArrayList<>();
+            List<Integer> route = new ArrayList<>();
             for (int j = 0; j < numStops; j++) {
-                int buildingId = in.nextInt();
-                path.add(city.getBuildingById(buildingId));
+                route.add(in.nextInt());
             }
-            city.addPod(new TransportPod(podId, path));
+            city.updatePod(podId, 0, route);
+            podIds.add(podId);
         }
+        city.retainPods(podIds);
 
         // Parse new buildings
         int numNewBuildings = in.nextInt();
@@ -78,10 +97,9 @@ class Player {
             if (buildingType == 0) {
                 // Landing pad
                 int numAstronauts = in.nextInt();
-                Map<Integer, Integer> astronautTypes = new HashMap<>();
+                int[] astronautTypes = new int[numAstronauts];
                 for (int j = 0; j < numAstronauts; j++) {
-                    int type = in.nextInt();
-                    astronautTypes.merge(type, 1, Integer::sum);
+                    astronautTypes[j] = in.nextInt();
                 }
                 city.addBuilding(new LandingPad(buildingId, x, y, astronautTypes));
             } else {
@@ -91,7 +109,7 @@ class Player {
         }
     }
 
-    private static void parsePodProperties(String podProperties) {
+    private void parsePodProperties(String podProperties) {
         // Implement parsing logic for pod properties
         // Example (adjust according to actual format):
         // podId position buildingId1 buildingId2 ...
@@ -105,7 +123,7 @@ class Player {
         city.updatePod(podId, position, route);
     }
 
-    private static void parseBuildingProperties(String buildingProperties) {
+    private void parseBuildingProperties(String buildingProperties) {
         String[] parts = buildingProperties.split(" ");
         int buildingId = Integer.parseInt(parts[0]);
         int type = Integer.parseInt(parts[1]);
@@ -114,13 +132,13 @@ class Player {
 
         if (type == 0) { // Landing Pad
             int totalAstronauts = Integer.parseInt(parts[4]);
-            List<Integer> astronautTypes = new ArrayList<>();
+            int[] astronautTypes = new int[parts.length - 5];
             for (int i = 5; i < parts.length; i++) {
-                astronautTypes.add(Integer.valueOf(parts[i]));
+                astronautTypes[i - 5] = Integer.parseInt(parts[i]);
             }
             System.err.println("Debug: Creating LandingPad with id " + buildingId +
-                ", total astronauts: " + totalAstronauts + ", astronaut types: " + astronautTypes);
-            city.addOrUpdateBuilding(new LandingPad(buildingId, x, y, totalAstronauts, astronautTypes));
+                ", total astronauts: " + totalAstronauts + ", astronaut types: " + Arrays.toString(astronautTypes));
+            city.addOrUpdateBuilding(new LandingPad(buildingId, x, y, astronautTypes));
         } else { // Lunar Module
             System.err.println("Debug: Creating LunarModule with id " + buildingId + ", type " + type);
             city.addOrUpdateBuilding(new LunarModule(buildingId, x, y, type));
@@ -0,0 +1,82 @@
+/**
+ * Free pod ids from 1 to 500 as a bitset of eight longs, so the lowest or highest free id
+ * is found with one bit scan per word. Lower ids enter contested tubes first, so pods on
+ * the busiest routes take ids from the bottom and the others from the top, which keeps
+ * low ids available for the routes that need them.
+ */
+class PodIdAllocator {
+    public static final int MAX_ID = 500;
+
+    private static final int WORDS = (MAX_ID >> 6) + 1;
+
+    private final long[] used = new long[WORDS];
+
+    public PodIdAllocator() {
+        // Id 0 and the bits past the last id are never free
+        used[0] = 1L;
+        for (int bit = MAX_ID + 1; bit < WORDS << 6; bit++) {
+            used[bit >> 6] |= 1L << bit;
+        }
+    }
+
+    private PodIdAllocator(long[] used) {
+        System.arraycopy(used, 0, this.used, 0, WORDS);
+    }
+
+    // Independent copy, to reserve ids for candidate actions without touching the city
+    public PodIdAllocator copy() {
+        return new PodIdAllocator(used);
+    }
+
+    public boolean isValid(int id) {
+        return id >= 1 && id <= MAX_ID;
+    }
+
+    public boolean isUsed(int id) {
+        return !isValid(id) || (used[id >> 6] & 1L << id) != 0;
+    }
+
+    public void markUsed(int id) {
+        if (isValid(id)) {
+            used[id >> 6] |= 1L << id;
+        }
+    }
+
+    public void release(int id) {
+        if (isValid(id)) {
+            used[id >> 6] &= ~(1L << id);
+        }
+    }
+
+    // Lowest free id, or -1 when all 500 are taken
+    public int lowestFree() {
+        for (int word = 0; word < WORDS; word++) {
+            long free = ~used[word];
+            if (free != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(free);
+            }
+        }
+        return -1;
+    }
+
+    // Highest free id, or -1 when all 500 are taken
+    public int highestFree() {
+        for (int word = WORDS - 1; word >= 0; word--) {
+            long free = ~used[word];
+            if (free != 0) {
+                return (word << 6) + 63 - Long.numberOfLeadingZeros(free);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Takes the lowest free id for a pod on a contested route, the highest otherwise.
+     * Returns -1 when no id is left.
+     */
+    public int allocate(boolean contested) {
+        int id = contested ? lowestFree() : highestFree();
+        markUsed(id);
+        return id;
+    }
+}
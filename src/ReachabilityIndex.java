@@ -0,0 +1,95 @@
+import java.util.*;
+
+/**
+ * Which buildings are connected, and to modules of which types, kept up to date as tubes
+ * and teleporters are built. Tubes and teleporters are never removed, so a union-find with
+ * union by size and path halving answers in near constant time, and every component keeps
+ * the module types it contains as a bitmask over the 20 types.
+ *
+ * Teleporters are joined like tubes although they only go one way, so the answer is exact
+ * over tubes and optimistic over teleporters: a building that cannot reach a type surely
+ * cannot, which is what pruning needs.
+ */
+class ReachabilityIndex {
+    private int[] parent = new int[0];
+    private int[] componentSize = new int[0];
+    private int[] typeMask = new int[0];
+
+    /**
+     * Adds a building on its own, with the type of its module, 0 for a landing pad.
+     */
+    public void addBuilding(int id, int moduleType) {
+        ensureSize(id + 1);
+        if (parent[id] < 0) {
+            parent[id] = id;
+            componentSize[id] = 1;
+        }
+        if (moduleType > 0) {
+            typeMask[find(id)] |= 1 << moduleType;
+        }
+    }
+
+    public void connect(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB || rootA < 0 || rootB < 0) {
+            return;
+        }
+        if (componentSize[rootA] < componentSize[rootB]) {
+            int swap = rootA;
+            rootA = rootB;
+            rootB = swap;
+        }
+        parent[rootB] = rootA;
+        componentSize[rootA] += componentSize[rootB];
+        typeMask[rootA] |= typeMask[rootB];
+    }
+
+    public boolean isConnected(int a, int b) {
+        int root = find(a);
+        return root >= 0 && root == find(b);
+    }
+
+    // Whether a module of the type may be reached from the building
+    public boolean canReach(int id, int type) {
+        return (getTypes(id) >> type & 1) != 0;
+    }
+
+    // Bit t is set when a module of type t is in the component of the building
+    public int getTypes(int id) {
+        int root = find(id);
+        return root < 0 ? 0 : typeMask[root];
+    }
+
+    // An independent index, for connections tried without being built
+    public ReachabilityIndex copy() {
+        ReachabilityIndex copy = new ReachabilityIndex();
+        copy.parent = parent.clone();
+        copy.componentSize = componentSize.clone();
+        copy.typeMask = typeMask.clone();
+        return copy;
+    }
+
+    private int find(int id) {
+        if (id < 0 || id >= parent.length || parent[id] < 0) {
+            return -1;
+        }
+        while (parent[id] != id) {
+            parent[id] = parent[parent[id]];
+            id = parent[id];
+        }
+        return id;
+    }
+
+    private void ensureSize(int required) {
+        if (required <= parent.length) {
+            return;
+        }
+        int oldSize = parent.length;
+        int newSize = Math.max(required, oldSize * 2);
+        parent = Arrays.copyOf(parent, newSize);
+        componentSize = Arrays.copyOf(componentSize, newSize);
+        typeMask = Arrays.copyOf(typeMask, newSize);
+        Arrays.fill(parent, oldSize, newSize, -1);
+    }
+}
@@ -0,0 +1,274 @@
+import java.util.*;
+
+/**
+ * Shortens looping pod routes in the tube-hop metric, the one that matters since a pod
+ * spends one day per tube whatever its length. The distinct stops of a route are ordered
+ * as a closed tour with 2-opt and Or-opt moves over each stop's nearest stops, driven by
+ * don't-look bits; every move is evaluated in constant time from a hop distance matrix.
+ * The tour is then expanded back into shortest tube paths, so consecutive stops are
+ * always joined by a tube.
+ */
+class RouteOptimizer {
+    private static final int NEIGHBORS = 6;
+    private static final int MAX_SEGMENT = 3;
+
+    private final MonthSimulator sim;
+
+    private int n;
+    private int[] stops;
+    private int[][] distance;
+    private int[][] parent;
+    private int[][] nearest;
+    private int[] tour;
+    private int[] position;
+
+    public RouteOptimizer(MonthSimulator sim) {
+        this.sim = sim;
+    }
+
+    /**
+     * Returns a loop through every stop of the route, as short as found within the
+     * iteration cap and the deadline, or null when it is no shorter than the route.
+     */
+    public int[] optimize(int[] route, int maxIterations, long deadlineNanos) {
+        LinkedHashSet<Integer> distinct = new LinkedHashSet<>();
+        for (int stop : route) {
+            distinct.add(stop);
+        }
+        if (distinct.size() < 3) {
+            return null;
+        }
+        stops = distinct.stream().mapToInt(Integer::intValue).toArray();
+        n = stops.length;
+        if (!computeDistances()) {
+            return null;
+        }
+
+        tour = new int[n];
+        position = new int[n];
+        for (int i = 0; i < n; i++) {
+            tour[i] = i;
+            position[i] = i;
+        }
+        boolean[] dontLook = new boolean[n];
+        Deque<Integer> active = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            active.add(i);
+        }
+        int iterations = 0;
+        while (!active.isEmpty() && iterations++ < maxIterations && System.nanoTime() < deadlineNanos) {
+            int city = active.poll();
+            dontLook[city] = true;
+            int[] touched = improveTwoOpt(city);
+            if (touched == null) {
+                touched = improveOrOpt(city);
+            }
+            if (touched != null) {
+                for (int t : touched) {
+                    if (dontLook[t]) {
+                        dontLook[t] = false;
+                        active.add(t);
+                    }
+                }
+            }
+        }
+
+        int legs = 0;
+        for (int i = 0; i < n; i++) {
+            legs += distance[tour[i]][tour[(i + 1) % n]];
+        }
+        return legs < route.length - 1 ? expand() : null;
+    }
+
+    /**
+     * Replaces edges (a, next a) and (c, next c) by (a, c) and (next a, next c), for the
+     * nearest stops c of a. Returns the stops whose tour neighbors changed.
+     */
+    private int[] improveTwoOpt(int a) {
+        int b = next(a);
+        for (int c : nearest[a]) {
+            if (distance[a][c] >= distance[a][b]) {
+                break;
+            }
+            int d = next(c);
+            if (c == b || d == a) {
+                continue;
+            }
+            int delta = distance[a][c] + distance[b][d] - distance[a][b] - distance[c][d];
+            if (delta < 0) {
+                reverse(position[b], position[c]);
+                return new int[]{a, b, c, d};
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves a segment of up to three stops starting at a between a nearest stop c and its
+     * successor, in either orientation. Returns the stops whose tour neighbors changed.
+     */
+    private int[] improveOrOpt(int a) {
+        for (int length = 1; length <= MAX_SEGMENT && length <= n - 3; length++) {
+            int first = a;
+            int last = tour[(position[a] + length - 1) % n];
+            int before = previous(first);
+            int after = next(last);
+            int removed = distance[before][first] + distance[last][after] - distance[before][after];
+            for (int c : nearest[a]) {
+                int d = next(c);
+                if (inSegment(c, first, length) || c == before) {
+                    continue;
+                }
+                int forward = distance[c][first] + distance[last][d] - distance[c][d];
+                int reversed = distance[c][last] + distance[first][d] - distance[c][d];
+                int added = Math.min(forward, reversed);
+                if (added - removed < 0) {
+                    moveSegment(first, length, c, reversed < forward);
+                    return new int[]{first, last, before, after, c, d};
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean inSegment(int city, int first, int length) {
+        int offset = (position[city] - position[first] + n) % n;
+        return offset < length;
+    }
+
+    private void moveSegment(int first, int length, int c, boolean reversed) {
+        int[] segment = new int[length];
+        for (int i = 0; i < length; i++) {
+            segment[i] = tour[(position[first] + i) % n];
+        }
+        if (reversed) {
+            for (int i = 0; i < length / 2; i++) {
+                int swap = segment[i];
+                segment[i] = segment[length - 1 - i];
+                segment[length - 1 - i] = swap;
+            }
+        }
+        List<Integer> rest = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int city = tour[(position[first] + length + i) % n];
+            if (rest.size() < n - length) {
+                rest.add(city);
+            }
+        }
+        int insert = rest.indexOf(c) + 1;
+        int index = 0;
+        for (int i = 0; i < insert; i++) {
+            tour[index++] = rest.get(i);
+        }
+        for (int city : segment) {
+            tour[index++] = city;
+        }
+        for (int i = insert; i < rest.size(); i++) {
+            tour[index++] = rest.get(i);
+        }
+        for (int i = 0; i < n; i++) {
+            position[tour[i]] = i;
+        }
+    }
+
+    // Reverses the tour from position i to position j, going forward around the loop
+    private void reverse(int i, int j) {
+        int length = (j - i + n) % n + 1;
+        for (int k = 0; k < length / 2; k++) {
+            int p = (i + k) % n;
+            int q = (j - k + n) % n;
+            int swap = tour[p];
+            tour[p] = tour[q];
+            tour[q] = swap;
+            position[tour[p]] = p;
+            position[tour[q]] = q;
+        }
+    }
+
+    private int next(int city) {
+        return tour[(position[city] + 1) % n];
+    }
+
+    private int previous(int city) {
+        return tour[(position[city] + n - 1) % n];
+    }
+
+    /**
+     * Hop distances between the stops by a BFS from each, along tubes only since pods do
+     * not take teleporters. False when a stop cannot reach another.
+     */
+    private boolean computeDistances() {
+        int size = sim.getSize();
+        distance = new int[n][n];
+        parent = new int[n][];
+        nearest = new int[n][];
+        int[] index = new int[size];
+        Arrays.fill(index, -1);
+        for (int i = 0; i < n; i++) {
+            if (stops[i] >= size) {
+                return false;
+            }
+            index[stops[i]] = i;
+        }
+        int[] hops = new int[size];
+        int[] queue = new int[size];
+        for (int i = 0; i < n; i++) {
+            Arrays.fill(hops, -1);
+            parent[i] = new int[size];
+            hops[stops[i]] = 0;
+            queue[0] = stops[i];
+            int head = 0;
+            int tail = 1;
+            while (head < tail) {
+                int current = queue[head++];
+                for (int k = 0; k < sim.getDegree(current); k++) {
+                    int neighbor = sim.getNeighbor(current, k);
+                    if (hops[neighbor] < 0) {
+                        hops[neighbor] = hops[current] + 1;
+                        parent[i][neighbor] = current;
+                        queue[tail++] = neighbor;
+                    }
+                }
+            }
+            for (int j = 0; j < n; j++) {
+                if (hops[stops[j]] < 0) {
+                    return false;
+                }
+                distance[i][j] = hops[stops[j]];
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            int from = i;
+            List<Integer> others = new ArrayList<>();
+            for (int j = 0; j < n; j++) {
+                if (j != i) {
+                    others.add(j);
+                }
+            }
+            others.sort(Comparator.comparingInt(j -> distance[from][j]));
+            nearest[i] = new int[Math.min(NEIGHBORS, others.size())];
+            for (int k = 0; k < nearest[i].length; k++) {
+                nearest[i][k] = others.get(k);
+            }
+        }
+        return true;
+    }
+
+    // The tour as building ids, each leg replaced by a shortest tube path, closed on its start
+    private int[] expand() {
+        List<Integer> route = new ArrayList<>();
+        route.add(stops[tour[0]]);
+        for (int i = 0; i < n; i++) {
+            int from = tour[i];
+            int to = tour[(i + 1) % n];
+            List<Integer> path = new ArrayList<>();
+            // Walk back from the destination along the BFS tree of the origin
+            for (int building = stops[to]; building != stops[from]; building = parent[from][building]) {
+                path.add(building);
+            }
+            Collections.reverse(path);
+            route.addAll(path);
+        }
+        return route.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
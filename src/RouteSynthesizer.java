@@ -0,0 +1,284 @@
+import java.util.*;
+
+/**
+ * Synthesizes pod routes from the tube network and the astronaut demand. A tube direction
+ * is needed when some astronaut walking down the distance field of its type from a landing
+ * pad would take it, and uncovered while no pod enters the tube from that end.
+ *
+ * Busy segments get shuttles, a path and the way back. The needed directions still
+ * uncovered are covered by loops: the directed arcs are balanced with shortest tube paths
+ * from the buildings with more arcs in than out, as in a directed Chinese postman tour, and
+ * the resulting Eulerian multigraph is split into simple cycles, spliced back together at
+ * shared buildings as long as a loop stays within the given number of legs. Everything is
+ * a few BFS over at most 150 buildings, cheap enough to redo whenever the network changes.
+ */
+class RouteSynthesizer {
+    private final MonthSimulator sim;
+    private final int size;
+    // Needed, and needed and uncovered, indexed by 2 * tube + 1 when the tube is taken towards
+    // the lower id
+    private final boolean[] needed;
+    private final boolean[] uncovered;
+
+    public RouteSynthesizer(MonthSimulator sim, DemandIndex demand) {
+        this.sim = sim;
+        this.size = sim.getSize();
+        this.needed = new boolean[2 * sim.getTubeCount()];
+        this.uncovered = new boolean[2 * sim.getTubeCount()];
+        for (int type = 1; type < DemandIndex.MAX_TYPES; type++) {
+            if (demand.getTypeDemand(type) == 0) {
+                continue;
+            }
+            boolean[] visited = new boolean[size];
+            for (int pad = 0; pad < demand.getPadCount(); pad++) {
+                if (demand.getDemand(pad, type) > 0) {
+                    markDownhill(type, demand.getPadId(pad), visited);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loop going along the path and back, whose directions no longer need a coverage loop.
+     */
+    public int[] shuttle(List<Integer> path) {
+        int[] stops = new int[2 * path.size() - 1];
+        for (int i = 0; i < path.size(); i++) {
+            stops[i] = path.get(i);
+            stops[stops.length - 1 - i] = path.get(i);
+        }
+        for (int i = 0; i + 1 < stops.length; i++) {
+            int arc = arc(stops[i], stops[i + 1]);
+            if (arc >= 0) {
+                uncovered[arc] = false;
+            }
+        }
+        return stops;
+    }
+
+    /**
+     * Whether the replacement still takes every needed direction of the route that no other
+     * pod takes, so that swapping them leaves no direction for a new coverage loop.
+     */
+    public boolean keepsNeededArcs(int[] route, int[] replacement) {
+        Set<Integer> kept = new HashSet<>();
+        for (int i = 0; i + 1 < replacement.length; i++) {
+            kept.add(arc(replacement[i], replacement[i + 1]));
+        }
+        // Needed directions the replacement drops, with the building they leave and the
+        // times the route takes them per cycle
+        Map<Integer, int[]> dropped = new HashMap<>();
+        for (int i = 0; i + 1 < route.length; i++) {
+            int arc = arc(route[i], route[i + 1]);
+            if (arc >= 0 && needed[arc] && !kept.contains(arc)) {
+                dropped.computeIfAbsent(arc, k -> new int[2])[1]++;
+                dropped.get(arc)[0] = route[i];
+            }
+        }
+        for (Map.Entry<Integer, int[]> entry : dropped.entrySet()) {
+            int[] fromAndCount = entry.getValue();
+            if (sim.getTubeTraversals(entry.getKey() / 2, fromAndCount[0]) <= fromAndCount[1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Loops covering every needed direction no pod or shuttle takes yet, each closed on its
+     * first stop and at most maxLegs long unless a single cycle already is.
+     */
+    public List<int[]> coverageLoops(int maxLegs) {
+        List<Deque<Integer>> outgoing = new ArrayList<>();
+        for (int id = 0; id < size; id++) {
+            outgoing.add(new ArrayDeque<>());
+        }
+        int[] balance = new int[size];
+        for (int a = 0; a < size; a++) {
+            for (int i = 0; i < sim.getDegree(a); i++) {
+                int b = sim.getNeighbor(a, i);
+                if (uncovered[arc(a, b)]) {
+                    outgoing.get(a).add(b);
+                    balance[a]++;
+                    balance[b]--;
+                }
+            }
+        }
+        balanceArcs(outgoing, balance);
+
+        List<List<Integer>> loops = new ArrayList<>();
+        for (List<Integer> cycle : simpleCycles(outgoing)) {
+            if (!spliceIntoLoop(loops, cycle, maxLegs)) {
+                loops.add(cycle);
+            }
+        }
+
+        List<int[]> routes = new ArrayList<>();
+        for (List<Integer> loop : loops) {
+            int[] stops = new int[loop.size()];
+            for (int i = 0; i < stops.length; i++) {
+                stops[i] = loop.get(i);
+            }
+            routes.add(stops);
+        }
+        return routes;
+    }
+
+    /**
+     * Marks the directions an astronaut of the type may take from the building on its way
+     * down the distance field, through the teleporter when it would take it.
+     */
+    private void markDownhill(int type, int start, boolean[] visited) {
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(start);
+        while (!stack.isEmpty()) {
+            int id = stack.pop();
+            if (visited[id]) {
+                continue;
+            }
+            visited[id] = true;
+            int distance = sim.getDistance(type, id);
+            if (distance == MonthSimulator.UNREACHABLE || distance == 0) {
+                continue;
+            }
+            int exit = sim.getTeleporterExit(id);
+            if (exit >= 0 && sim.getDistance(type, exit) <= distance) {
+                stack.push(exit);
+                continue;
+            }
+            for (int i = 0; i < sim.getDegree(id); i++) {
+                int neighbor = sim.getNeighbor(id, i);
+                if (sim.getDistance(type, neighbor) == distance - 1) {
+                    int tube = sim.tubeBetween(id, neighbor);
+                    needed[arc(id, neighbor)] = true;
+                    uncovered[arc(id, neighbor)] |= sim.getTubeTraversals(tube, id) == 0;
+                    stack.push(neighbor);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the shortest tube path from each building with more arcs in than out to the
+     * closest building with more arcs out than in, until every building is balanced.
+     */
+    private void balanceArcs(List<Deque<Integer>> outgoing, int[] balance) {
+        int[] parent = new int[size];
+        int[] queue = new int[size];
+        for (int from = 0; from < size; from++) {
+            while (balance[from] < 0) {
+                Arrays.fill(parent, -1);
+                parent[from] = from;
+                queue[0] = from;
+                int head = 0;
+                int tail = 1;
+                int to = -1;
+                while (head < tail && to < 0) {
+                    int current = queue[head++];
+                    for (int i = 0; i < sim.getDegree(current); i++) {
+                        int neighbor = sim.getNeighbor(current, i);
+                        if (parent[neighbor] < 0) {
+                            parent[neighbor] = current;
+                            queue[tail++] = neighbor;
+                            if (balance[neighbor] > 0) {
+                                to = neighbor;
+                                break;
+                            }
+                        }
+                    }
+                }
+                if (to < 0) {
+                    // Cannot happen within a connected set of tubes, but never loop on it
+                    break;
+                }
+                for (int id = to; id != from; id = parent[id]) {
+                    outgoing.get(parent[id]).add(id);
+                }
+                balance[from]++;
+                balance[to]--;
+            }
+        }
+    }
+
+    /**
+     * Decomposes the balanced arcs into simple cycles. A walk follows unused arcs, avoiding
+     * the way it came from when it can, and cuts out a cycle whenever it reaches a building
+     * already on it.
+     */
+    private List<List<Integer>> simpleCycles(List<Deque<Integer>> outgoing) {
+        List<List<Integer>> cycles = new ArrayList<>();
+        int[] onWalk = new int[size];
+        Arrays.fill(onWalk, -1);
+        for (int start = 0; start < size; start++) {
+            List<Integer> walk = new ArrayList<>();
+            while (!outgoing.get(start).isEmpty() || walk.size() > 1) {
+                if (walk.isEmpty()) {
+                    walk.add(start);
+                    onWalk[start] = 0;
+                }
+                int current = walk.get(walk.size() - 1);
+                int previous = walk.size() > 1 ? walk.get(walk.size() - 2) : -1;
+                Deque<Integer> arcs = outgoing.get(current);
+                if (arcs.isEmpty()) {
+                    // Balanced arcs never strand a walk, drop it rather than spin
+                    break;
+                }
+                int next = arcs.peekFirst() == previous && arcs.size() > 1 ? arcs.pollLast() : arcs.pollFirst();
+                if (onWalk[next] >= 0) {
+                    List<Integer> cycle = new ArrayList<>(walk.subList(onWalk[next], walk.size()));
+                    cycle.add(next);
+                    cycles.add(cycle);
+                    for (int i = onWalk[next] + 1; i < walk.size(); i++) {
+                        onWalk[walk.get(i)] = -1;
+                    }
+                    walk.subList(onWalk[next] + 1, walk.size()).clear();
+                } else {
+                    onWalk[next] = walk.size();
+                    walk.add(next);
+                }
+            }
+            for (int id : walk) {
+                onWalk[id] = -1;
+            }
+        }
+        return cycles;
+    }
+
+    /**
+     * Splices the cycle into the longest loop sharing a building with it that stays within
+     * maxLegs, false when there is none.
+     */
+    private boolean spliceIntoLoop(List<List<Integer>> loops, List<Integer> cycle, int maxLegs) {
+        List<Integer> bestLoop = null;
+        int bestAt = -1;
+        int bestShared = -1;
+        for (List<Integer> loop : loops) {
+            if (loop.size() + cycle.size() - 2 > maxLegs || (bestLoop != null && loop.size() <= bestLoop.size())) {
+                continue;
+            }
+            for (int i = 0; i + 1 < loop.size() && bestLoop != loop; i++) {
+                int shared = cycle.subList(0, cycle.size() - 1).indexOf(loop.get(i));
+                if (shared >= 0) {
+                    bestLoop = loop;
+                    bestAt = i;
+                    bestShared = shared;
+                }
+            }
+        }
+        if (bestLoop == null) {
+            return false;
+        }
+        // The cycle, rotated to start and end on the shared building, replaces it in the loop
+        List<Integer> rotated = new ArrayList<>();
+        for (int i = 0; i < cycle.size() - 1; i++) {
+            rotated.add(cycle.get((bestShared + i) % (cycle.size() - 1)));
+        }
+        bestLoop.addAll(bestAt, rotated);
+        return true;
+    }
+
+    private int arc(int from, int to) {
+        int tube = sim.tubeBetween(from, to);
+        return tube < 0 ? -1 : 2 * tube + (to < from ? 1 : 0);
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.*;
+
+/**
+ * The tubes as parallel coordinate arrays, so that a candidate segment is tested against
+ * all of them in one pass. The inner loop has no branch: each tube contributes the product
+ * of its two orientation pairs, which is negative only when both pairs have opposite signs,
+ * and the products are OR-ed together. C2 can vectorize it, and there is no virtual call
+ * on Building per tube. The result is only checked between blocks of tubes, to still stop
+ * early on a crossing.
+ *
+ * Orientations are computed on ints: with city coordinates each cross product stays under
+ * 2^15, so the product of two of them cannot overflow.
+ */
+class SegmentBatch {
+    private static final int BLOCK = 32;
+
+    private int[] x1 = new int[64];
+    private int[] y1 = new int[64];
+    private int[] x2 = new int[64];
+    private int[] y2 = new int[64];
+    private int size;
+
+    public void add(int startX, int startY, int endX, int endY) {
+        if (size == x1.length) {
+            x1 = Arrays.copyOf(x1, 2 * size);
+            y1 = Arrays.copyOf(y1, 2 * size);
+            x2 = Arrays.copyOf(x2, 2 * size);
+            y2 = Arrays.copyOf(y2, 2 * size);
+        }
+        x1[size] = startX;
+        y1[size] = startY;
+        x2[size] = endX;
+        y2[size] = endY;
+        size++;
+    }
+
+    public void removeLast() {
+        size--;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Whether the segment crosses any of the segments at a point inside both, as
+     * Geometry.segmentsCross.
+     */
+    public boolean crossesAny(int ax, int ay, int bx, int by) {
+        int abx = bx - ax;
+        int aby = by - ay;
+        int crossing = 0;
+        // Blocks of branchless tests, checked between blocks to stop at the first crossing
+        for (int block = 0; block < size && crossing >= 0; block += BLOCK) {
+            int end = Math.min(size, block + BLOCK);
+            for (int i = block; i < end; i++) {
+                int cx = x1[i];
+                int cy = y1[i];
+                int dx = x2[i];
+                int dy = y2[i];
+                int o1 = abx * (cy - ay) - aby * (cx - ax);
+                int o2 = abx * (dy - ay) - aby * (dx - ax);
+                int cdx = dx - cx;
+                int cdy = dy - cy;
+                int o3 = cdx * (ay - cy) - cdy * (ax - cx);
+                int o4 = cdx * (by - cy) - cdy * (bx - cx);
+                crossing |= (o1 * o2) & (o3 * o4);
+            }
+        }
+        return crossing < 0;
+    }
+}
@@ -0,0 +1,256 @@
+import java.util.*;
+
+/**
+ * Connects the landing pads to modules of the types their astronauts want, at little tube
+ * cost, as an approximate group Steiner tree: the (pad, type) groups are taken by demand,
+ * and each one grows the tree by the cheapest path from its pad to any building already
+ * joined to a module of the type, as in the shortest path heuristic of Takahashi and
+ * Matsuyama.
+ *
+ * Paths are Dijkstra searches over the tube candidates where built tubes, teleporters and
+ * the tubes planned so far cost nothing and a new tube costs its price, 10 per km. A new
+ * tube is only taken when the city accepts it, it crosses no tube planned before and
+ * neither end has run out of its 5 tubes, so the planned tubes can all be built together.
+ * Paths end at buildings joined to the type by built links only, so a connection that goes
+ * over tubes planned before carries them along, and is worth something bought on its own.
+ * With 150 buildings and a few hundred candidates, a search takes a few dozen microseconds.
+ */
+class SteinerConnector {
+    private static final double TUBE_COST_PER_KM = 10.0;
+
+    private final City city;
+    private final MonthSimulator sim;
+    private final DemandIndex demand;
+    private final ReachabilityIndex built;
+    // Built links plus the tubes planned so far
+    private final ReachabilityIndex reachability;
+    private final int size;
+    private final int[] position;
+
+    // Candidate tubes the city would build, by building: the other end and the cost
+    private final List<List<int[]>> candidates = new ArrayList<>();
+    // Tubes planned so far, by building, and their ends as (a, b) pairs
+    private final List<List<Integer>> planned = new ArrayList<>();
+    private final List<int[]> plannedTubes = new ArrayList<>();
+    private final Map<Long, int[]> plannedByPair = new HashMap<>();
+    private final int[] plannedDegree;
+    // Buildings found to have no path to a module of the type, which planning never adds
+    private final boolean[][] stranded;
+
+    public SteinerConnector(City city, List<int[]> tubeCandidates, ReachabilityIndex reachability) {
+        this.city = city;
+        this.sim = city.getSimulator();
+        this.demand = city.getDemandIndex();
+        this.built = reachability;
+        this.reachability = reachability.copy();
+        this.size = sim.getSize();
+        this.plannedDegree = new int[size];
+        this.stranded = new boolean[DemandIndex.MAX_TYPES][size];
+        this.position = new int[size];
+        for (int id = 0; id < size; id++) {
+            candidates.add(new ArrayList<>());
+            planned.add(new ArrayList<>());
+            Building building = city.getBuildingById(id);
+            position[id] = building == null ? 0 : building.getPosition();
+        }
+        for (int[] edge : tubeCandidates) {
+            Building b1 = city.getBuildingById(edge[0]);
+            Building b2 = city.getBuildingById(edge[1]);
+            if (b1 != null && b2 != null && edge[0] < size && edge[1] < size && city.canAddTube(b1, b2)) {
+                int cost = (int) Math.floor(Math.hypot(b1.getX() - b2.getX(), b1.getY() - b2.getY()) * TUBE_COST_PER_KM);
+                candidates.get(edge[0]).add(new int[]{edge[1], cost});
+                candidates.get(edge[1]).add(new int[]{edge[0], cost});
+            }
+        }
+    }
+
+    /**
+     * Takes a tube proposed elsewhere as part of the tree, so no connection pays for it again.
+     */
+    public void reserve(int a, int b, int cost) {
+        List<int[]> tubes = new ArrayList<>();
+        tubes.add(new int[]{a, b, cost});
+        plan(tubes, Collections.emptyList());
+    }
+
+    /**
+     * The connections of the tree, in the order they were planned. Each one is worth the
+     * astronauts it joins to modules of their type, counted once over the whole tree, and
+     * lists the tubes planned before that it goes over.
+     */
+    public List<Connection> connect() {
+        List<int[]> groups = new ArrayList<>();
+        for (int pad = 0; pad < demand.getPadCount(); pad++) {
+            for (int type = 1; type < DemandIndex.MAX_TYPES; type++) {
+                if (demand.getDemand(pad, type) > 0 && demand.getModuleCount(type) > 0) {
+                    groups.add(new int[]{pad, type});
+                }
+            }
+        }
+        groups.sort((a, b) -> Integer.compare(demand.getDemand(b[0], b[1]), demand.getDemand(a[0], a[1])));
+
+        List<Connection> connections = new ArrayList<>();
+        for (int[] group : groups) {
+            int padId = demand.getPadId(group[0]);
+            if (reachability.canReach(padId, group[1]) || stranded[group[1]][padId]) {
+                continue;
+            }
+            List<int[]> required = new ArrayList<>();
+            List<int[]> tubes = cheapestPath(padId, group[1], required);
+            if (tubes == null || tubes.isEmpty() || crossEachOther(tubes)) {
+                continue;
+            }
+            connections.add(plan(tubes, required));
+        }
+        return connections;
+    }
+
+    /**
+     * New tubes of the cheapest path from the building to one joined to a module of the
+     * type, null when there is none and every building searched is stranded for the type.
+     * The planned tubes the path goes over are added to required.
+     */
+    private List<int[]> cheapestPath(int from, int type, List<int[]> required) {
+        int[] cost = new int[size];
+        int[] previous = new int[size];
+        // Cost of the tube the building was reached by, 0 for an existing link
+        int[] stepCost = new int[size];
+        Arrays.fill(cost, Integer.MAX_VALUE);
+        cost[from] = 0;
+        previous[from] = -1;
+        PriorityQueue<int[]> queue = new PriorityQueue<>((a, b) -> Integer.compare(a[1], b[1]));
+        queue.add(new int[]{from, 0});
+        List<Integer> settled = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            int[] top = queue.poll();
+            int v = top[0];
+            if (top[1] > cost[v]) {
+                continue;
+            }
+            settled.add(v);
+            if (built.canReach(v, type)) {
+                List<int[]> tubes = new ArrayList<>();
+                for (int w = v; previous[w] >= 0; w = previous[w]) {
+                    if (stepCost[w] > 0) {
+                        tubes.add(new int[]{previous[w], w, stepCost[w]});
+                    } else if (sim.tubeBetween(previous[w], w) < 0 && sim.getTeleporterExit(previous[w]) != w) {
+                        required.add(plannedByPair.get(pairKey(previous[w], w)));
+                    }
+                }
+                return tubes;
+            }
+            for (int i = 0; i < sim.getDegree(v); i++) {
+                relax(v, sim.getNeighbor(v, i), 0, cost, previous, stepCost, queue);
+            }
+            int exit = sim.getTeleporterExit(v);
+            if (exit >= 0) {
+                relax(v, exit, 0, cost, previous, stepCost, queue);
+            }
+            for (int w : planned.get(v)) {
+                relax(v, w, 0, cost, previous, stepCost, queue);
+            }
+            for (int[] edge : candidates.get(v)) {
+                if (canPlan(v, edge[0])) {
+                    relax(v, edge[0], edge[1], cost, previous, stepCost, queue);
+                }
+            }
+        }
+        for (int v : settled) {
+            stranded[type][v] = true;
+        }
+        return null;
+    }
+
+    private void relax(int v, int w, int edgeCost, int[] cost, int[] previous, int[] stepCost, PriorityQueue<int[]> queue) {
+        if (cost[v] + edgeCost < cost[w]) {
+            cost[w] = cost[v] + edgeCost;
+            previous[w] = v;
+            stepCost[w] = edgeCost;
+            queue.add(new int[]{w, cost[w]});
+        }
+    }
+
+    // A candidate tube still free of the planned ones, with room at both ends
+    private boolean canPlan(int a, int b) {
+        if (planned.get(a).contains(b)
+            || sim.getDegree(a) + plannedDegree[a] >= City.MAX_TUBES_PER_BUILDING
+            || sim.getDegree(b) + plannedDegree[b] >= City.MAX_TUBES_PER_BUILDING) {
+            return false;
+        }
+        for (int[] tube : plannedTubes) {
+            if (crosses(a, b, tube[0], tube[1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Candidates are not all Delaunay edges, so the tubes of one path may still cross
+    private boolean crossEachOther(List<int[]> tubes) {
+        for (int i = 0; i < tubes.size(); i++) {
+            for (int j = i + 1; j < tubes.size(); j++) {
+                if (crosses(tubes.get(i)[0], tubes.get(i)[1], tubes.get(j)[0], tubes.get(j)[1])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean crosses(int a, int b, int c, int d) {
+        return Geometry.segmentsCross(position[a], position[b], position[c], position[d]);
+    }
+
+    /**
+     * Adds the tubes to the tree, worth the astronauts of every pad that can reach a module
+     * type through them and could not before.
+     */
+    private Connection plan(List<int[]> tubes, List<int[]> required) {
+        int[] typesBefore = padTypes();
+        for (int[] tube : tubes) {
+            plannedByPair.put(pairKey(tube[0], tube[1]), tube);
+            planned.get(tube[0]).add(tube[1]);
+            planned.get(tube[1]).add(tube[0]);
+            plannedDegree[tube[0]]++;
+            plannedDegree[tube[1]]++;
+            plannedTubes.add(tube);
+            reachability.connect(tube[0], tube[1]);
+        }
+        int astronauts = 0;
+        int[] typesAfter = padTypes();
+        for (int pad = 0; pad < demand.getPadCount(); pad++) {
+            int gained = typesAfter[pad] & ~typesBefore[pad];
+            for (int type = 1; type < DemandIndex.MAX_TYPES; type++) {
+                if ((gained >> type & 1) != 0) {
+                    astronauts += demand.getDemand(pad, type);
+                }
+            }
+        }
+        List<int[]> all = new ArrayList<>(required);
+        all.addAll(tubes);
+        return new Connection(all, astronauts);
+    }
+
+    private long pairKey(int a, int b) {
+        return (long) Math.min(a, b) * size + Math.max(a, b);
+    }
+
+    private int[] padTypes() {
+        int[] types = new int[demand.getPadCount()];
+        for (int pad = 0; pad < types.length; pad++) {
+            types[pad] = reachability.getTypes(demand.getPadId(pad));
+        }
+        return types;
+    }
+
+    static class Connection {
+        // Ends and cost of each tube to build, the planned ones it relies on included
+        final List<int[]> tubes;
+        final int astronauts;
+
+        Connection(List<int[]> tubes, int astronauts) {
+            this.tubes = tubes;
+            this.astronauts = astronauts;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+import java.util.*;
+
+/**
+ * Quick estimate of the points of a month, without simulating the pods day by day. The pod
+ * routes are reduced to what each tube direction offers over the month: the days a pod
+ * leaves through it, from the day tables of the compiled routes, and 10 seats per pod, with
+ * the pods past the capacity of a tube on a day left out in id order. A pod held back does
+ * not shift the rest of its route, which is where most of the error comes from.
+ *
+ * Each group of astronauts of a landing pad and type then walks down the distance field of
+ * its type, taking at each building the downhill direction with seats left that leaves
+ * first, teleporters included. The seats of the whole path are taken at once, and the part
+ * of the group that did not fit looks for another path. Speed and balance points follow
+ * from the day and the module each part arrives at, as in the simulation.
+ */
+class SurrogateEvaluator {
+    private static final int DAYS = MonthSimulator.DAYS;
+    private static final int MAX_POINTS = MonthSimulator.MAX_POINTS;
+    // Paths tried for what is left of a group before giving up on it
+    private static final int MAX_PATHS_PER_GROUP = 3;
+
+    private final DemandIndex demand;
+    private int delivered;
+    private int speedPoints;
+    private int balancePoints;
+
+    public SurrogateEvaluator(DemandIndex demand) {
+        this.demand = demand;
+    }
+
+    public int estimate(MonthSimulator sim) {
+        int size = sim.getSize();
+        int tubeCount = sim.getTubeCount();
+        // Directions indexed by 2 * tube + 1 when the tube is taken towards the lower id
+        int[] seats = new int[2 * tubeCount];
+        int[] departures = new int[2 * tubeCount];
+        int[] tubeUse = new int[tubeCount * DAYS];
+        for (CompiledRoute route : sim.getRoutes()) {
+            for (int day = 0; day < DAYS; day++) {
+                int tube = route.getTube(day);
+                if (tube < 0 || tubeUse[tube * DAYS + day]++ >= sim.getTubeCapacity(tube)) {
+                    continue;
+                }
+                int arc = 2 * tube + (route.getPosition(day + 1) < route.getPosition(day) ? 1 : 0);
+                seats[arc] += TransportPod.CAPACITY;
+                departures[arc] |= 1 << day;
+            }
+        }
+
+        delivered = 0;
+        speedPoints = 0;
+        balancePoints = 0;
+        int[] arrivals = new int[size];
+        int[] path = new int[MonthSimulator.UNREACHABLE];
+        for (int pad = 0; pad < demand.getPadCount(); pad++) {
+            int padId = demand.getPadId(pad);
+            for (int type = 1; type < DemandIndex.MAX_TYPES; type++) {
+                int count = demand.getDemand(pad, type);
+                if (count == 0 || padId >= size) {
+                    continue;
+                }
+                byte[] distance = sim.getDistances(type);
+                for (int attempt = 0; attempt < MAX_PATHS_PER_GROUP && count > 0; attempt++) {
+                    int moved = walk(sim, distance, type, padId, count, seats, departures, path, arrivals);
+                    if (moved == 0) {
+                        break;
+                    }
+                    count -= moved;
+                }
+            }
+        }
+        return speedPoints + balancePoints;
+    }
+
+    public int getDelivered() {
+        return delivered;
+    }
+
+    public int getSpeedPoints() {
+        return speedPoints;
+    }
+
+    public int getBalancePoints() {
+        return balancePoints;
+    }
+
+    /**
+     * Moves up to count astronauts from the building down to a module of the type, along the
+     * directions leaving first, and returns how many made it within the month.
+     */
+    private int walk(MonthSimulator sim, byte[] distance, int type, int position, int count,
+                     int[] seats, int[] departures, int[] path, int[] arrivals) {
+        int day = 0;
+        int length = 0;
+        int amount = count;
+        while (true) {
+            int exit = sim.getTeleporterExit(position);
+            if (exit >= 0 && (distance[exit] & 0xFF) <= (distance[position] & 0xFF)) {
+                position = exit;
+            }
+            if (sim.getModuleType(position) == type) {
+                break;
+            }
+            int current = distance[position] & 0xFF;
+            int bestArc = -1;
+            int bestDay = DAYS;
+            int bestNext = -1;
+            for (int i = 0; i < sim.getDegree(position); i++) {
+                int neighbor = sim.getNeighbor(position, i);
+                if ((distance[neighbor] & 0xFF) >= current) {
+                    continue;
+                }
+                int arc = 2 * sim.tubeBetween(position, neighbor) + (neighbor < position ? 1 : 0);
+                int later = departures[arc] >>> day;
+                if (seats[arc] > 0 && later != 0 && day + Integer.numberOfTrailingZeros(later) < bestDay) {
+                    bestDay = day + Integer.numberOfTrailingZeros(later);
+                    bestArc = arc;
+                    bestNext = neighbor;
+                }
+            }
+            if (bestArc < 0) {
+                return 0;
+            }
+            path[length++] = bestArc;
+            amount = Math.min(amount, seats[bestArc]);
+            day = bestDay + 1;
+            position = bestNext;
+        }
+        for (int i = 0; i < length; i++) {
+            seats[path[i]] -= amount;
+        }
+        int rewarded = Math.max(0, Math.min(amount, MAX_POINTS - arrivals[position]));
+        delivered += amount;
+        speedPoints += amount * (MAX_POINTS - day);
+        balancePoints += rewarded * (MAX_POINTS - arrivals[position]) - rewarded * (rewarded - 1) / 2;
+        arrivals[position] += amount;
+        return amount;
+    }
+}
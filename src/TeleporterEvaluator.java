@@ -0,0 +1,225 @@
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Scores every teleporter that could be built, as the astronauts' hops it would save. A
+ * teleporter from e to x gives e the distance of x, so an astronaut of a landing pad p
+ * heading for type t would come down from D_t(p) to hops(p, e) + D_t(x) when shorter;
+ * the score is that reduction summed over the astronauts of every pad. Unreachable modules
+ * count as MAX_POINTS hops, the speed points an astronaut can lose at most.
+ *
+ * The hops of every landing pad to every building come from one BFS of all the pads at
+ * once, each building keeping the set of pads that reach it as a bitset, 150 pads taking
+ * three longs: a level ORs the sets of the neighbors, word by word. The fields D_t are
+ * read once up front, so the rows of the scan, one per entrance, share nothing mutable
+ * and can be scored in parallel.
+ */
+class TeleporterEvaluator {
+    private static final int MAX_POINTS = MonthSimulator.MAX_POINTS;
+
+    private final MonthSimulator sim;
+    private final int size;
+    private final int padCount;
+    // Hops from each landing pad to each building, UNREACHABLE when there is no way
+    private final int[][] padHops;
+    private final byte[][] fields;
+    // Astronaut types, counts and current hops to their modules, per landing pad
+    private final int[][] padTypes;
+    private final int[][] padCounts;
+    private final int[][] padBase;
+    // Ends of the teleporters accepted so far
+    private final Set<Integer> taken = new HashSet<>();
+
+    public TeleporterEvaluator(MonthSimulator sim, DemandIndex demand) {
+        this.sim = sim;
+        this.size = sim.getSize();
+        this.padCount = demand.getPadCount();
+        this.fields = new byte[DemandIndex.MAX_TYPES][];
+        this.padTypes = new int[padCount][];
+        this.padCounts = new int[padCount][];
+        this.padBase = new int[padCount][];
+        for (int pad = 0; pad < padCount; pad++) {
+            int types = 0;
+            for (int type = 1; type < DemandIndex.MAX_TYPES; type++) {
+                if (demand.getDemand(pad, type) > 0 && demand.getModuleCount(type) > 0) {
+                    types++;
+                }
+            }
+            padTypes[pad] = new int[types];
+            padCounts[pad] = new int[types];
+            padBase[pad] = new int[types];
+            int i = 0;
+            for (int type = 1; type < DemandIndex.MAX_TYPES; type++) {
+                if (demand.getDemand(pad, type) > 0 && demand.getModuleCount(type) > 0) {
+                    if (fields[type] == null) {
+                        fields[type] = sim.getDistances(type);
+                    }
+                    padTypes[pad][i] = type;
+                    padCounts[pad][i] = demand.getDemand(pad, type);
+                    padBase[pad][i] = Math.min(MAX_POINTS, fields[type][demand.getPadId(pad)] & 0xFF);
+                    i++;
+                }
+            }
+        }
+        this.padHops = computePadHops(demand);
+    }
+
+    public int getPadHops(int padIndex, int id) {
+        return padHops[padIndex][id];
+    }
+
+    /**
+     * Hops saved over the month by a teleporter from the entrance to the exit, on top of the
+     * teleporters accepted so far, 0 when it cannot be built.
+     */
+    public long score(int entrance, int exit) {
+        if (!isFeasible(entrance) || !isFeasible(exit) || entrance == exit) {
+            return 0;
+        }
+        long saved = 0;
+        for (int pad = 0; pad < padCount; pad++) {
+            int hops = padHops[pad][entrance];
+            if (hops == MonthSimulator.UNREACHABLE) {
+                continue;
+            }
+            for (int i = 0; i < padTypes[pad].length; i++) {
+                int after = hops + (fields[padTypes[pad][i]][exit] & 0xFF);
+                if (after < padBase[pad][i]) {
+                    saved += (long) padCounts[pad][i] * (padBase[pad][i] - after);
+                }
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * Every feasible pair with a positive score, as (entrance, exit, score) triples.
+     */
+    public List<long[]> candidates(boolean parallel) {
+        List<Integer> entrances = new ArrayList<>();
+        for (int id = 0; id < size; id++) {
+            if (isFeasible(id) && reachedByPad(id)) {
+                entrances.add(id);
+            }
+        }
+        List<List<long[]>> rows = (parallel ? entrances.parallelStream() : entrances.stream())
+            .map(this::scoreExits)
+            .collect(Collectors.toList());
+
+        List<long[]> candidates = new ArrayList<>();
+        for (List<long[]> row : rows) {
+            candidates.addAll(row);
+        }
+        return candidates;
+    }
+
+    /**
+     * Takes a teleporter as built: its ends are no longer free, and later scores only count
+     * the hops saved on top of it.
+     */
+    public void accept(int entrance, int exit) {
+        taken.add(entrance);
+        taken.add(exit);
+        for (int pad = 0; pad < padCount; pad++) {
+            int hops = padHops[pad][entrance];
+            if (hops == MonthSimulator.UNREACHABLE) {
+                continue;
+            }
+            for (int i = 0; i < padTypes[pad].length; i++) {
+                padBase[pad][i] = Math.min(padBase[pad][i], hops + (fields[padTypes[pad][i]][exit] & 0xFF));
+            }
+        }
+    }
+
+    private List<long[]> scoreExits(int entrance) {
+        List<long[]> row = new ArrayList<>();
+        for (int exit = 0; exit < size; exit++) {
+            long saved = score(entrance, exit);
+            if (saved > 0) {
+                row.add(new long[]{entrance, exit, saved});
+            }
+        }
+        return row;
+    }
+
+    // An existing building without a teleporter end yet
+    private boolean isFeasible(int id) {
+        return id >= 0 && id < size && sim.getModuleType(id) >= 0 && !sim.hasTeleporter(id) && !taken.contains(id);
+    }
+
+    private boolean reachedByPad(int id) {
+        for (int pad = 0; pad < padCount; pad++) {
+            if (padHops[pad][id] != MonthSimulator.UNREACHABLE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Multi-source BFS of every landing pad at once: reach[v] is the set of pads within the
+     * current number of hops of building v, and a level is reach[v] OR the reach of its
+     * neighbors, plus the reach of the entrance at the exit of a teleporter.
+     */
+    private int[][] computePadHops(DemandIndex demand) {
+        int words = (padCount + 63) / 64;
+        long[] reach = new long[size * words];
+        long[] next = new long[size * words];
+        int[][] hops = new int[padCount][size];
+        for (int pad = 0; pad < padCount; pad++) {
+            Arrays.fill(hops[pad], MonthSimulator.UNREACHABLE);
+            int id = demand.getPadId(pad);
+            reach[id * words + pad / 64] |= 1L << (pad % 64);
+        }
+        teleport(reach, words);
+        recordLevel(reach, new long[size * words], words, 0, hops);
+
+        for (int level = 1; level < MonthSimulator.UNREACHABLE; level++) {
+            for (int v = 0; v < size; v++) {
+                for (int w = 0; w < words; w++) {
+                    long bits = reach[v * words + w];
+                    for (int i = 0; i < sim.getDegree(v); i++) {
+                        bits |= reach[sim.getNeighbor(v, i) * words + w];
+                    }
+                    next[v * words + w] = bits;
+                }
+            }
+            teleport(next, words);
+            if (!recordLevel(next, reach, words, level, hops)) {
+                break;
+            }
+            long[] swap = reach;
+            reach = next;
+            next = swap;
+        }
+        return hops;
+    }
+
+    private void teleport(long[] reach, int words) {
+        for (int v = 0; v < size; v++) {
+            int exit = sim.getTeleporterExit(v);
+            if (exit >= 0) {
+                for (int w = 0; w < words; w++) {
+                    reach[exit * words + w] |= reach[v * words + w];
+                }
+            }
+        }
+    }
+
+    // Sets the hops of the pads new in each building's set, false when there were none
+    private boolean recordLevel(long[] reach, long[] previous, int words, int level, int[][] hops) {
+        boolean grew = false;
+        for (int v = 0; v < size; v++) {
+            for (int w = 0; w < words; w++) {
+                long fresh = reach[v * words + w] & ~previous[v * words + w];
+                while (fresh != 0) {
+                    int pad = w * 64 + Long.numberOfTrailingZeros(fresh);
+                    hops[pad][v] = level;
+                    fresh &= fresh - 1;
+                    grew = true;
+                }
+            }
+        }
+        return grew;
+    }
+}
@@ -0,0 +1,318 @@
+import java.util.*;
+
+/**
+ * Upper bound on what the tubes can carry in a month, as a min-cost flow on the network
+ * expanded over the 20 days: building b on day t is a node, a tube joins day t to day t + 1
+ * in each direction with room for a full pod per unit of capacity, waiting in place is free
+ * of limits and teleporters are instant. Every unit of flow costs its arrival day.
+ *
+ * Since any path to building b on day t takes t days, residual ones included, the min-cost
+ * flow is the earliest arrival flow: the modules are opened one day at a time and filled
+ * with a max flow over the days up to it, never looking at the later days. No shortest
+ * path is ever computed, and the early days where most of the flow goes stay small.
+ *
+ * Supply comes from the landing pads of one astronaut type at a time and drains into the
+ * modules of that type. Types are routed one after another on what the previous ones left,
+ * with their flow frozen, which keeps the commodities apart at the price of optimality.
+ * When a type cannot be routed entirely, the saturated tubes on the cut around what its
+ * pads still reach are its bottlenecks, charged with the astronauts left behind.
+ */
+class ThroughputEstimator {
+    private static final int DAYS = MonthSimulator.DAYS;
+    private static final int INFINITE = Integer.MAX_VALUE / 2;
+
+    private final MonthSimulator sim;
+    private final DemandIndex demand;
+    private final ReachabilityIndex reachability;
+    private final int size;
+    private final int nodeCount;
+    private final int source;
+    private final int sink;
+
+    // Edges in forward / residual pairs, e ^ 1 being the reverse of e
+    private int edgeCount;
+    private int[] edgeTo = new int[1024];
+    private int[] edgeNext = new int[1024];
+    private int[] edgeCapacity = new int[1024];
+    private int[] edgeTube = new int[1024];
+    private final int[] firstEdge;
+
+    // Scratch arrays of the augmenting searches: the nodes of the path from the source and
+    // the edges between them
+    private final boolean[] onPath;
+    private final int[] currentEdge;
+    private final int[] pathNode;
+    private final int[] pathEdge;
+
+    private final int[] padEdge;
+    private final int[] moduleSinkEdge;
+
+    private final int[][] routed;
+    private final int[] unmetBehind;
+    private int totalSupply;
+    private int totalRouted;
+    private long totalDays;
+
+    /**
+     * Pads that cannot reach a module of a type are left out of its flow, and types no pad
+     * can reach are skipped without a search.
+     */
+    public ThroughputEstimator(MonthSimulator sim, DemandIndex demand, ReachabilityIndex reachability) {
+        this.sim = sim;
+        this.demand = demand;
+        this.reachability = reachability;
+        this.size = sim.getSize();
+        this.nodeCount = size * (DAYS + 1) + 2;
+        this.source = nodeCount - 2;
+        this.sink = nodeCount - 1;
+        this.firstEdge = new int[nodeCount];
+        Arrays.fill(firstEdge, -1);
+        this.onPath = new boolean[nodeCount];
+        this.currentEdge = new int[nodeCount];
+        this.pathNode = new int[nodeCount + 1];
+        this.pathEdge = new int[nodeCount];
+        this.padEdge = new int[demand.getPadCount()];
+        this.moduleSinkEdge = new int[size];
+        this.routed = new int[demand.getPadCount()][DemandIndex.MAX_TYPES];
+        this.unmetBehind = new int[sim.getTubeCount()];
+        buildNetwork();
+        for (int type = 1; type < DemandIndex.MAX_TYPES; type++) {
+            if (demand.getTypeDemand(type) > 0 && demand.getModuleCount(type) > 0) {
+                routeType(type);
+            }
+        }
+    }
+
+    public int getTotalSupply() {
+        return totalSupply;
+    }
+
+    public int getTotalRouted() {
+        return totalRouted;
+    }
+
+    // Mean arrival day of the astronauts routed
+    public double getMeanArrivalDay() {
+        return totalRouted == 0 ? 0 : (double) totalDays / totalRouted;
+    }
+
+    // Astronauts of the type the landing pad at the given index gets to a module within the month
+    public int getRouted(int padIndex, int type) {
+        return routed[padIndex][type];
+    }
+
+    // Astronauts left behind by the types whose cut goes through the tube
+    public int getUnmetBehind(int tube) {
+        return tube < unmetBehind.length ? unmetBehind[tube] : 0;
+    }
+
+    /**
+     * Tubes on the cut of at least one type, most astronauts left behind first.
+     */
+    public List<Integer> getBottlenecks() {
+        List<Integer> bottlenecks = new ArrayList<>();
+        for (int tube = 0; tube < unmetBehind.length; tube++) {
+            if (unmetBehind[tube] > 0) {
+                bottlenecks.add(tube);
+            }
+        }
+        bottlenecks.sort((a, b) -> Integer.compare(unmetBehind[b], unmetBehind[a]));
+        return bottlenecks;
+    }
+
+    private void buildNetwork() {
+        for (int day = 0; day <= DAYS; day++) {
+            for (int id = 0; id < size; id++) {
+                int exit = sim.getTeleporterExit(id);
+                if (exit >= 0) {
+                    addEdge(node(id, day), node(exit, day), INFINITE, -1);
+                }
+                if (day == DAYS) {
+                    continue;
+                }
+                addEdge(node(id, day), node(id, day + 1), INFINITE, -1);
+                for (int i = 0; i < sim.getDegree(id); i++) {
+                    int neighbor = sim.getNeighbor(id, i);
+                    int tube = sim.tubeBetween(id, neighbor);
+                    addEdge(node(id, day), node(neighbor, day + 1), sim.getTubeCapacity(tube) * TransportPod.CAPACITY, tube);
+                }
+            }
+        }
+        // Opened for one type at a time
+        for (int pad = 0; pad < padEdge.length; pad++) {
+            padEdge[pad] = addEdge(source, node(demand.getPadId(pad), 0), 0, -1);
+        }
+        Arrays.fill(moduleSinkEdge, -1);
+        for (int id = 0; id < size; id++) {
+            if (sim.getModuleType(id) > 0) {
+                moduleSinkEdge[id] = edgeCount;
+                for (int day = 0; day <= DAYS; day++) {
+                    addEdge(node(id, day), sink, 0, -1);
+                }
+            }
+        }
+    }
+
+    private void routeType(int type) {
+        int supply = 0;
+        int reachable = 0;
+        for (int pad = 0; pad < padEdge.length; pad++) {
+            supply += demand.getDemand(pad, type);
+            if (reachability.canReach(demand.getPadId(pad), type)) {
+                edgeCapacity[padEdge[pad]] = demand.getDemand(pad, type);
+                reachable += demand.getDemand(pad, type);
+            }
+        }
+        if (reachable == 0) {
+            // Nothing to route, and no tube to blame
+            totalSupply += supply;
+            return;
+        }
+        int flow = 0;
+        for (int day = 0; day <= DAYS && flow < reachable; day++) {
+            setSinks(type, day, INFINITE);
+            int pushed;
+            do {
+                // Searches until one finds nothing left, the edge pointers skipping dead ends
+                System.arraycopy(firstEdge, 0, currentEdge, 0, nodeCount);
+                pushed = 0;
+                int amount;
+                while (flow < reachable && (amount = augment(reachable - flow, day)) > 0) {
+                    pushed += amount;
+                    flow += amount;
+                }
+                totalDays += (long) pushed * day;
+            } while (pushed > 0 && flow < reachable);
+        }
+
+        for (int pad = 0; pad < padEdge.length; pad++) {
+            routed[pad][type] = edgeCapacity[padEdge[pad] ^ 1];
+        }
+        totalSupply += supply;
+        totalRouted += flow;
+        if (flow < reachable) {
+            chargeCut(reachable - flow);
+        }
+
+        // Freeze the flow of the type, so later types only use the capacity left
+        for (int e = 1; e < edgeCount; e += 2) {
+            edgeCapacity[e] = 0;
+        }
+        for (int pad = 0; pad < padEdge.length; pad++) {
+            edgeCapacity[padEdge[pad]] = 0;
+        }
+        for (int day = 0; day <= DAYS; day++) {
+            setSinks(type, day, 0);
+        }
+    }
+
+    private void setSinks(int type, int day, int capacity) {
+        for (int id = 0; id < size; id++) {
+            if (moduleSinkEdge[id] >= 0 && sim.getModuleType(id) == type) {
+                edgeCapacity[moduleSinkEdge[id] + 2 * day] = capacity;
+            }
+        }
+    }
+
+    /**
+     * Pushes up to the limit along one path from the source to the sink without going past
+     * the given day, and returns the amount. The path is grown depth first from the edge
+     * pointers, and a node found to be a dead end moves its parent's pointer on, so the
+     * edges exhausted in this search are never tried again.
+     */
+    private int augment(int limit, int lastDay) {
+        int depth = 0;
+        pathNode[0] = source;
+        onPath[source] = true;
+        while (depth >= 0) {
+            int v = pathNode[depth];
+            if (v == sink) {
+                int amount = limit;
+                for (int i = 0; i < depth; i++) {
+                    amount = Math.min(amount, edgeCapacity[pathEdge[i]]);
+                }
+                for (int i = 0; i < depth; i++) {
+                    edgeCapacity[pathEdge[i]] -= amount;
+                    edgeCapacity[pathEdge[i] ^ 1] += amount;
+                }
+                for (int i = 0; i <= depth; i++) {
+                    onPath[pathNode[i]] = false;
+                }
+                return amount;
+            }
+            int e = currentEdge[v];
+            while (e >= 0 && !(edgeCapacity[e] > 0 && !onPath[edgeTo[e]] && (edgeTo[e] == sink || edgeTo[e] / size <= lastDay))) {
+                e = edgeNext[e];
+            }
+            currentEdge[v] = e;
+            if (e < 0) {
+                onPath[v] = false;
+                depth--;
+                if (depth >= 0) {
+                    currentEdge[pathNode[depth]] = edgeNext[pathEdge[depth]];
+                }
+                continue;
+            }
+            pathEdge[depth] = e;
+            pathNode[++depth] = edgeTo[e];
+            onPath[edgeTo[e]] = true;
+        }
+        return 0;
+    }
+
+    /**
+     * Charges the astronauts left behind to the saturated tubes leaving the part of the
+     * network the pads still reach in the residual graph, once per tube.
+     */
+    private void chargeCut(int unmet) {
+        boolean[] reached = new boolean[nodeCount];
+        int[] stack = new int[nodeCount];
+        int top = 0;
+        stack[top++] = source;
+        reached[source] = true;
+        while (top > 0) {
+            int v = stack[--top];
+            for (int e = firstEdge[v]; e >= 0; e = edgeNext[e]) {
+                if (edgeCapacity[e] > 0 && !reached[edgeTo[e]]) {
+                    reached[edgeTo[e]] = true;
+                    stack[top++] = edgeTo[e];
+                }
+            }
+        }
+        boolean[] charged = new boolean[unmetBehind.length];
+        for (int e = 0; e < edgeCount; e += 2) {
+            int tube = edgeTube[e];
+            if (tube >= 0 && !charged[tube] && reached[edgeTo[e ^ 1]] && !reached[edgeTo[e]]) {
+                charged[tube] = true;
+                unmetBehind[tube] += unmet;
+            }
+        }
+    }
+
+    private int node(int id, int day) {
+        return day * size + id;
+    }
+
+    private int addEdge(int from, int to, int capacity, int tube) {
+        if (edgeCount + 2 > edgeTo.length) {
+            int length = 2 * edgeTo.length;
+            edgeTo = Arrays.copyOf(edgeTo, length);
+            edgeNext = Arrays.copyOf(edgeNext, length);
+            edgeCapacity = Arrays.copyOf(edgeCapacity, length);
+            edgeTube = Arrays.copyOf(edgeTube, length);
+        }
+        int e = edgeCount;
+        edgeTo[e] = to;
+        edgeNext[e] = firstEdge[from];
+        edgeCapacity[e] = capacity;
+        edgeTube[e] = tube;
+        firstEdge[from] = e;
+        edgeTo[e + 1] = from;
+        edgeNext[e + 1] = firstEdge[to];
+        edgeCapacity[e + 1] = 0;
+        edgeTube[e + 1] = tube;
+        firstEdge[to] = e + 1;
+        edgeCount += 2;
+        return e;
+    }
+}
@@ -1,42 +1,131 @@
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 class TransportationAI {
     private final City city;
+    private final GameState gameState;
+    private final AIParameters parameters;
+    private final InvestmentPlanner investmentPlanner;
     private final Map<Integer, Building> buildingMap;
     private final Map<Integer, List<Tube>> tubeMap;
     private final Map<Integer, TransportPod> podMap;
     private List<Teleporter> teleporters;
     private final PriorityQueue<BuildingPair> potentialConnections;
+    private final DelaunayGraph proximityGraph;
+    private final ReachabilityIndex reachability;
+    private List<int[]> tubeCandidates;
+    private ZonePartition zones;
+    private final TranspositionTable planScores;
+    private PodIdAllocator reservedPodIds;
+    // Pods a candidate of this turn destroys, which no other candidate may destroy again
+    private Set<Integer> destroyedPods;
+    private ThroughputEstimator throughput;
+    // Scans on the common ForkJoinPool, only for a bot that has the process to itself
+    private boolean parallelScans;
 
     private static final int TELEPORTER_COST = 5000;
     private static final int POD_COST = 1000;
     private static final int POD_REFUND = 750;
-    private static final int MAX_TUBES_PER_BUILDING = 5;
     private static final double TUBE_COST_PER_KM = 10.0;
     private static final int MAX_POD_CAPACITY = 10;
+    // Whole turn, counted from its first line, well under the 1000 ms and 500 ms limits
+    private static final long FIRST_TURN_NANOS = 600_000_000L;
+    private static final long TURN_NANOS = 400_000_000L;
+    private static final int TRANSPOSITION_TABLE_BITS = 16;
+    private static final double POINTS_PER_ASTRONAUT = 75.0;
+    private static final long ROUTE_OPTIMIZATION_NANOS = 20_000_000L;
+    private static final int MAX_ROUTE_ITERATIONS = 2000;
+    // A pod held back one day loses about a day's share of a full load
+    private static final double POINTS_PER_DELAY_DAY = MAX_POD_CAPACITY * POINTS_PER_ASTRONAUT / MonthSimulator.DAYS;
+    // Nearest buildings added to the Delaunay edges as tube candidates
+    private static final int NEAREST_CANDIDATE_EDGES = 4;
+    // Coverage loops come back to each stop at least twice a month
+    private static final int MAX_COVERAGE_LOOP_LEGS = MonthSimulator.DAYS / 2;
+    // Buildings per zone of the plan search
+    private static final int ZONE_SIZE = 25;
 
     public TransportationAI(City city) {
+        this(city, new GameState(), AIParameters.DEFAULT);
+    }
+
+    public TransportationAI(City city, GameState gameState, AIParameters parameters) {
         this.city = city;
+        this.gameState = gameState;
+        this.parameters = parameters;
+        this.investmentPlanner = new InvestmentPlanner(parameters.getInvestmentReturnRate());
         this.buildingMap = new HashMap<>();
         this.tubeMap = new HashMap<>();
         this.podMap = new HashMap<>();
         this.teleporters = new ArrayList<>();
         this.potentialConnections = new PriorityQueue<>((a, b) -> Double.compare(a.distance, b.distance));
-    }
-
-    public List<String> makeDecisions() {
+        this.proximityGraph = new DelaunayGraph();
+        this.reachability = new ReachabilityIndex();
+        this.tubeCandidates = new ArrayList<>();
+        this.zones = new ZonePartition(Collections.emptyList(), tubeCandidates, ZONE_SIZE);
+        this.planScores = new TranspositionTable(TRANSPOSITION_TABLE_BITS);
+    }
+
+    /**
+     * Lets the teleporter scan use every core. Tools running many bots in one process keep
+     * it off, so the bots stay on the threads the tools give them.
+     */
+    public void setParallelScans(boolean parallelScans) {
+        this.parallelScans = parallelScans;
+    }
+
+    /**
+     * Decides the actions of the turn that started at the given System.nanoTime, parsing
+     * and every phase before the plan search counting against the turn's time.
+     */
+    public List<String> makeDecisions(long turnStart) {
+        long deadline = turnStart + (gameState.getCurrentMonth() == 1 ? FIRST_TURN_NANOS : TURN_NANOS);
         List<String> actions = new ArrayList<>();
 
         analyzeCityState();
 
-        actions.addAll(decideTubeConstruction());
-        actions.addAll(decideTeleporterConstruction());
-        actions.addAll(decidePodConstruction());
-        actions.addAll(decidePodRoutes());
+        // Every phase proposes candidates, then a single allocation is made under the real budget
+        BudgetAllocator allocator = new BudgetAllocator();
+        reservedPodIds = city.getPodIds().copy();
+        destroyedPods = new HashSet<>();
+        decideTubeConstruction(allocator);
+        decideTeleporterConstruction(allocator);
+        List<String> reroutes = decidePodRoutes(allocator, deadline);
+        decidePodConstruction(allocator);
+        int monthsLeft = gameState.getMonthsLeftIncludingCurrent();
+        actions.addAll(allocator.allocate(city.getResources(), monthsLeft, investmentPlanner.valueOfBanking(monthsLeft)));
+        actions.addAll(reroutes);
+
+        return searchPlan(actions, deadline);
+    }
+
+    /**
+     * Uses the greedy actions as the starting point of the plan search, which keeps the
+     * affordable and valid ones and improves on them until the deadline.
+     */
+    private List<String> searchPlan(List<String> greedyActions, long deadline) {
+        List<PlanAction> seed = new ArrayList<>();
+        for (String actions : greedyActions) {
+            // A renumbering comes as a single DESTROY;POD candidate, a Steiner connection as its TUBEs
+            for (String action : actions.split(";")) {
+                PlanAction parsed = PlanAction.parse(action);
+                if (parsed != null) {
+                    seed.add(parsed);
+                }
+            }
+        }
 
-        return actions;
+        int monthsLeft = gameState.getMonthsLeftIncludingCurrent();
+        double resourceValue = investmentPlanner.valueOfBanking(monthsLeft);
+        PlanSearch search = new PlanSearch(city, tubeCandidates, zones, planScores, monthsLeft, resourceValue, gameState.getCurrentMonth());
+        List<PlanAction> plan = search.search(seed, deadline);
+        System.err.println("Debug: Plan search ran " + search.getEvaluations() + " evaluations (" + planScores.getHits()
+            + " transposition hits, " + planScores.getMisses() + " misses), kept " + plan.size() + " actions for a monthly gain of "
+            + (search.getBestMonthScore() - search.getBaseMonthScore()) + " using "
+            + (city.getResources() - search.getBestResources()) + " resources, resource value " + resourceValue
+            + ", surrogate pruned " + search.getPruned() + " states, error " + String.format("%.0f", search.getEstimateError())
+            + " on the month score and " + String.format("%.0f", search.getDeltaError()) + " on its change");
+
+        return plan.stream().map(PlanAction::toString).collect(Collectors.toList());
     }
 
     private void analyzeCityState() {
@@ -49,8 +138,17 @@ class TransportationAI {
     }
 
     private void updateBuildingMap() {
+        boolean added = false;
         for (Building building : city.getBuildings()) {
-            buildingMap.put(building.getId(), building);
+            if (buildingMap.put(building.getId(), building) == null) {
+                proximityGraph.insert(building.getId(), building.getX(), building.getY());
+                reachability.addBuilding(building.getId(), building instanceof LunarModule module ? module.getModuleType() : 0);
+                added = true;
+            }
+        }
+        if (added) {
+            tubeCandidates = proximityGraph.candidateEdges(NEAREST_CANDIDATE_EDGES);
+            zones = new ZonePartition(city.getBuildings(), tubeCandidates, ZONE_SIZE);
         }
     }
 
@@ -59,10 +157,12 @@ class TransportationAI {
         for (Tube tube : city.getTubes()) {
             tubeMap.computeIfAbsent(tube.getStart().getId(), k -> new ArrayList<>()).add(tube);
             tubeMap.computeIfAbsent(tube.getEnd().getId(), k -> new ArrayList<>()).add(tube);
+            reachability.connect(tube.getStart().getId(), tube.getEnd().getId());
         }
     }
 
     private void updatePodMap() {
+        podMap.clear();
         for (TransportPod pod : city.getPods()) {
             podMap.put(pod.getId(), pod);
         }
@@ -70,260 +170,301 @@ class TransportationAI {
 
     private void updateTeleporters() {
         teleporters = city.getTeleporters();
+        for (Teleporter teleporter : teleporters) {
+            reachability.connect(teleporter.getEntrance().getId(), teleporter.getExit().getId());
+        }
     }
 
+    /**
+     * Only the Delaunay edges and the edges to the nearest buildings are considered, useful
+     * tubes being almost always short and non-crossing.
+     */
     private void identifyPotentialConnections() {
         potentialConnections.clear();
-        List<Building> buildings = new ArrayList<>(buildingMap.values());
-        for (int i = 0; i < buildings.size(); i++) {
-            for (int j = i + 1; j < buildings.size(); j++) {
-                Building b1 = buildings.get(i);
-                Building b2 = buildings.get(j);
-                if (canConnectBuildings(b1, b2)) {
-                    double distance = calculateDistance(b1, b2);
-                    potentialConnections.offer(new BuildingPair(b1, b2, distance));
-                }
-            }
-        }
-    }
-
-    private boolean canConnectBuildings(Building b1, Building b2) {
-        if (tubeMap.getOrDefault(b1.getId(), Collections.emptyList()).size() >= MAX_TUBES_PER_BUILDING ||
-            tubeMap.getOrDefault(b2.getId(), Collections.emptyList()).size() >= MAX_TUBES_PER_BUILDING) {
-            return false;
-        }
-        if (city.getTubeByBuildings(b1, b2) != null) {
-            return false;
-        }
-        return !wouldCrossExistingTube(b1, b2);
-    }
-
-    private boolean wouldCrossExistingTube(Building b1, Building b2) {
-        for (Tube tube : city.getTubes()) {
-            if (segmentsIntersect(b1, b2, tube.getStart(), tube.getEnd())) {
-                return true;
+        for (int[] edge : tubeCandidates) {
+            Building b1 = buildingMap.get(edge[0]);
+            Building b2 = buildingMap.get(edge[1]);
+            if (city.canAddTube(b1, b2)) {
+                double distance = calculateDistance(b1, b2);
+                potentialConnections.offer(new BuildingPair(b1, b2, distance));
             }
         }
-        return false;
-    }
-
-    private boolean segmentsIntersect(Building a, Building b, Building c, Building d) {
-        int o1 = orientation(a, b, c);
-        int o2 = orientation(a, b, d);
-        int o3 = orientation(c, d, a);
-        int o4 = orientation(c, d, b);
-
-        if (o1 != o2 && o3 != o4) return true;
-
-        if (o1 == 0 && onSegment(a, c, b)) return true;
-        if (o2 == 0 && onSegment(a, d, b)) return true;
-        if (o3 == 0 && onSegment(c, a, d)) return true;
-        if (o4 == 0 && onSegment(c, b, d)) return true;
-
-        return false;
-    }
-
-    private int orientation(Building p, Building q, Building r) {
-        int val = (q.getY() - p.getY()) * (r.getX() - q.getX()) -
-                  (q.getX() - p.getX()) * (r.getY() - q.getY());
-        if (val == 0) return 0;
-        return (val > 0) ? 1 : 2;
-    }
-
-    private boolean onSegment(Building p, Building q, Building r) {
-        return q.getX() <= Math.max(p.getX(), r.getX()) && q.getX() >= Math.min(p.getX(), r.getX()) &&
-            q.getY() <= Math.max(p.getY(), r.getY()) && q.getY() >= Math.min(p.getY(), r.getY());
     }
 
     private void analyzeNetworkEfficiency() {
-        Map<Integer, Integer> moduleTypeCount = new HashMap<>();
-        Map<Integer, Integer> astronautTypeCount = new HashMap<>();
-        int totalAstronauts = 0;
-
-        for (Building building : buildingMap.values()) {
-            if (building instanceof LunarModule module) {
-                moduleTypeCount.put(module.getModuleType(), moduleTypeCount.getOrDefault(module.getModuleType(), 0) + 1);
-            } else if (building instanceof LandingPad landingPad) {
-                totalAstronauts += landingPad.getTotalAstronauts();
-                for (Map.Entry<Integer, Integer> entry : landingPad.getAstronautTypeCounts().entrySet()) {
-                    int astronautType = entry.getKey();
-                    int count = entry.getValue();
-                    astronautTypeCount.put(astronautType, astronautTypeCount.getOrDefault(astronautType, 0) + count);
-                }
-            }
-        }
-
-        System.err.println("Debug: Total astronauts across all landing pads: " + totalAstronauts);
-        System.err.println("Debug: Astronaut counts by type: " + astronautTypeCount);
-        System.err.println("Debug: Module counts by type: " + moduleTypeCount);
+        DemandIndex demand = city.getDemandIndex();
+        System.err.println("Debug: Total astronauts across all landing pads: " + demand.getTotalAstronauts());
 
         // Analyze balance between astronaut types and module types
-        for (Map.Entry<Integer, Integer> entry : astronautTypeCount.entrySet()) {
-            int astronautType = entry.getKey();
-            int astronautCount = entry.getValue();
-            int moduleCount = moduleTypeCount.getOrDefault(astronautType, 0);
+        for (int type = 1; type < DemandIndex.MAX_TYPES; type++) {
+            int astronautCount = demand.getTypeDemand(type);
+            int moduleCount = demand.getModuleCount(type);
+            if (astronautCount == 0) {
+                continue;
+            }
             if (moduleCount == 0) {
-                System.err.println("Warning: No modules for astronaut type " + astronautType + " (Count: " + astronautCount + ")");
+                System.err.println("Warning: No modules for astronaut type " + type + " (Count: " + astronautCount + ")");
             } else if (astronautCount > moduleCount * MAX_POD_CAPACITY) {
-                System.err.println("Warning: Potential bottleneck for astronaut type " + astronautType +
+                System.err.println("Warning: Potential bottleneck for astronaut type " + type +
                     " (Astronauts: " + astronautCount + ", Modules: " + moduleCount + ")");
             }
+            int stranded = 0;
+            for (int pad = 0; pad < demand.getPadCount(); pad++) {
+                if (!reachability.canReach(demand.getPadId(pad), type)) {
+                    stranded += demand.getDemand(pad, type);
+                }
+            }
+            if (moduleCount > 0 && stranded > 0) {
+                System.err.println("Warning: " + stranded + " astronauts of type " + type + " cannot reach a module yet");
+            }
         }
-    }
 
-    private List<String> decideTubeConstruction() {
-        List<String> actions = new ArrayList<>();
-        int availableResources = city.getResources();
-
-        while (!potentialConnections.isEmpty() && availableResources > 0) {
-            BuildingPair pair = potentialConnections.poll();
-            int tubeCost = calculateTubeCost(pair.distance);
-
-            if (tubeCost <= availableResources) {
-                actions.add(String.format("TUBE %d %d", pair.b1.getId(), pair.b2.getId()));
-                availableResources -= tubeCost;
+        // What the tubes could carry at best this month, and where they fall short
+        throughput = new ThroughputEstimator(city.getSimulator(), demand, reachability);
+        System.err.println("Debug: Tubes can carry " + throughput.getTotalRouted() + " of " + throughput.getTotalSupply()
+            + " astronauts, arriving on day " + String.format("%.1f", throughput.getMeanArrivalDay())
+            + " on average, bottleneck tubes " + throughput.getBottlenecks());
+    }
+
+    private void decideTubeConstruction(BudgetAllocator allocator) {
+        // Picked by lazy greedy on marginal value: a pad's astronauts of a type are only
+        // served once, and a tube crossing a picked one is worth nothing
+        boolean[][] served = new boolean[city.getDemandIndex().getPadCount()][DemandIndex.MAX_TYPES];
+        List<BuildingPair> picked = new ArrayList<>();
+        LazyGreedySelector<BuildingPair> selector = new LazyGreedySelector<>(pair -> estimateTubeValue(pair, served, picked));
+        while (!potentialConnections.isEmpty()) {
+            selector.add(potentialConnections.poll());
+        }
+        BuildingPair pair;
+        while ((pair = selector.next()) != null) {
+            allocator.add(String.format("TUBE %d %d", pair.b1.getId(), pair.b2.getId()), calculateTubeCost(pair.distance), selector.getLastGain());
+            markServed(pair, served);
+            picked.add(pair);
+        }
+
+        // Whole paths from the pads to modules of their types, each bought with all its tubes,
+        // those shared with the direct tubes above or earlier paths included: the allocator
+        // buys a shared tube once
+        long steinerStart = System.nanoTime();
+        SteinerConnector steiner = new SteinerConnector(city, tubeCandidates, reachability);
+        for (BuildingPair direct : picked) {
+            steiner.reserve(direct.b1.getId(), direct.b2.getId(), calculateTubeCost(direct.distance));
+        }
+        List<SteinerConnector.Connection> connections = steiner.connect();
+        System.err.println("Debug: Steiner tree planned " + connections.size() + " connections in "
+            + (System.nanoTime() - steinerStart) / 1000 + " us");
+        for (SteinerConnector.Connection connection : connections) {
+            if (connection.astronauts > 0) {
+                List<String> tubes = new ArrayList<>();
+                int[] costs = new int[connection.tubes.size()];
+                for (int i = 0; i < costs.length; i++) {
+                    int[] tube = connection.tubes.get(i);
+                    tubes.add(String.format("TUBE %d %d", tube[0], tube[1]));
+                    costs[i] = tube[2];
+                }
+                allocator.add(tubes, costs, connection.astronauts * POINTS_PER_ASTRONAUT);
             }
         }
 
-        // Consider upgrading existing tubes
+        // Consider upgrading the busy tubes where pods actually wait, for the delay removed, and
+        // the bottlenecks of the flow, where one more pod could carry astronauts left behind
+        MonthSimulator sim = city.getSimulator();
+        CongestionModel congestion = new CongestionModel(sim);
         for (Tube tube : city.getTubes()) {
-            if (tube.getCapacity() < 3 && isHighTrafficTube(tube)) {
-                int upgradeCost = tube.getUpgradeCost();
-                if (upgradeCost <= availableResources) {
-                    actions.add(String.format("UPGRADE %d %d", tube.getStart().getId(), tube.getEnd().getId()));
-                    availableResources -= upgradeCost;
+            if (tube.getCapacity() < parameters.getMaxUpgradeCapacity() && isHighTrafficTube(tube)) {
+                int index = sim.tubeBetween(tube.getStart().getId(), tube.getEnd().getId());
+                int saved = congestion.upgradeGain(index);
+                int unmet = Math.min(throughput.getUnmetBehind(index), MAX_POD_CAPACITY);
+                if (saved > 0 || unmet > 0) {
+                    int upgradeCost = tube.getBaseCost() * (tube.getCapacity() + 1);
+                    allocator.add(String.format("UPGRADE %d %d", tube.getStart().getId(), tube.getEnd().getId()), upgradeCost,
+                        saved * POINTS_PER_DELAY_DAY + unmet * POINTS_PER_ASTRONAUT);
                 }
             }
         }
 
-        return actions;
-    }
-
-    private boolean isHighTrafficTube(Tube tube) {
-        // Implement logic to determine if a tube has high traffic
-        // This could be based on the number of pods using the tube, or the number of astronauts passing through
-        return podMap.values().stream()
-            .filter(pod -> pod.getRoute().contains(tube.getStart()) && pod.getRoute().contains(tube.getEnd()))
-            .count() >= tube.getCapacity();
-    }
-
-    private List<String> decideTeleporterConstruction() {
-        List<String> actions = new ArrayList<>();
-        int availableResources = city.getResources();
-
-        // Identify potential teleporter locations
-        List<BuildingPair> potentialTeleporters = identifyPotentialTeleporterLocations();
-
-        for (BuildingPair pair : potentialTeleporters) {
-            if (availableResources >= TELEPORTER_COST) {
-                actions.add(String.format("TELEPORT %d %d", pair.b1.getId(), pair.b2.getId()));
-                availableResources -= TELEPORTER_COST;
-            } else {
-                break;
+        // A delayed pod rebuilt under a lower free id may stop yielding, for less than an upgrade
+        for (int podId : congestion.getDelayedPods()) {
+            int newId = reservedPodIds.lowestFree();
+            if (newId < 0 || newId > podId) {
+                continue;
+            }
+            int saved = congestion.renumberGain(podId, newId);
+            if (saved > 0) {
+                reservedPodIds.markUsed(newId);
+                destroyedPods.add(podId);
+                String stops = Arrays.stream(sim.getRoute(podId).getStops()).mapToObj(String::valueOf).collect(Collectors.joining(" "));
+                allocator.add(String.format("DESTROY %d;POD %d %s", podId, newId, stops), POD_COST - POD_REFUND, saved * POINTS_PER_DELAY_DAY);
             }
         }
-
-        return actions;
     }
 
-    private List<BuildingPair> identifyPotentialTeleporterLocations() {
-        List<BuildingPair> potentialTeleporters = new ArrayList<>();
-        Map<Integer, Set<Building>> moduleTypeToBuildings = new HashMap<>();
-
-        // Group buildings by module type
-        for (Building building : buildingMap.values()) {
-            if (building instanceof LunarModule module) {
-                moduleTypeToBuildings.computeIfAbsent(module.getModuleType(), k -> new HashSet<>()).add(module);
-            }
+    /**
+     * Monthly points a direct tube could bring: the astronauts of a landing pad whose type
+     * matches the module at the other end, unless a tube picked before already serves them.
+     * Other tubes only matter as part of a path, which the plan search evaluates.
+     */
+    private double estimateTubeValue(BuildingPair pair, boolean[][] served, List<BuildingPair> picked) {
+        int[] padType = padAndType(pair);
+        if (padType == null || served[padType[0]][padType[1]]) {
+            return 0;
         }
-
-        // For each module type, find the two most distant buildings
-        for (Set<Building> buildings : moduleTypeToBuildings.values()) {
-            if (buildings.size() >= 2) {
-                Building[] mostDistant = findMostDistantBuildings(buildings);
-                potentialTeleporters.add(new BuildingPair(mostDistant[0], mostDistant[1],
-                    calculateDistance(mostDistant[0], mostDistant[1])));
+        for (BuildingPair other : picked) {
+            if (Geometry.segmentsCross(pair.b1.getPosition(), pair.b2.getPosition(), other.b1.getPosition(), other.b2.getPosition())) {
+                return 0;
             }
         }
-
-        // Sort potential teleporters by distance in descending order
-        potentialTeleporters.sort((a, b) -> Double.compare(b.distance, a.distance));
-
-        return potentialTeleporters;
+        return city.getDemandIndex().getDemand(padType[0], padType[1]) * POINTS_PER_ASTRONAUT;
     }
 
-    private Building[] findMostDistantBuildings(Set<Building> buildings) {
-        Building[] mostDistant = new Building[2];
-        double maxDistance = 0;
+    private void markServed(BuildingPair pair, boolean[][] served) {
+        int[] padType = padAndType(pair);
+        if (padType != null) {
+            served[padType[0]][padType[1]] = true;
+        }
+    }
 
-        for (Building b1 : buildings) {
-            for (Building b2 : buildings) {
-                if (b1 != b2) {
-                    double distance = calculateDistance(b1, b2);
-                    if (distance > maxDistance) {
-                        maxDistance = distance;
-                        mostDistant[0] = b1;
-                        mostDistant[1] = b2;
-                    }
-                }
+    // Landing pad index and module type of a pad to module pair, null for other pairs
+    private int[] padAndType(BuildingPair pair) {
+        DemandIndex demand = city.getDemandIndex();
+        for (int pad = 0; pad < demand.getPadCount(); pad++) {
+            if (pair.b2 instanceof LunarModule module && demand.getPadId(pad) == pair.b1.getId()) {
+                return new int[]{pad, module.getModuleType()};
+            }
+            if (pair.b1 instanceof LunarModule module && demand.getPadId(pad) == pair.b2.getId()) {
+                return new int[]{pad, module.getModuleType()};
             }
         }
+        return null;
+    }
 
-        return mostDistant;
+    private boolean isHighTrafficTube(Tube tube) {
+        // Based on the number of pods using the tube, read from the simulator's tube to pods index
+        MonthSimulator sim = city.getSimulator();
+        int index = sim.tubeBetween(tube.getStart().getId(), tube.getEnd().getId());
+        return index >= 0 && sim.getTubePodCount(index) >= tube.getCapacity() * parameters.getHighTrafficPodsPerCapacity();
     }
 
-    private List<String> decidePodConstruction() {
-        List<String> actions = new ArrayList<>();
-        int availableResources = city.getResources();
+    /**
+     * Every feasible teleporter is scored by the hops it saves the astronauts, a hop being a
+     * day of speed points. The best ones are picked by lazy greedy, each one scored for the
+     * hops it saves on top of the teleporters picked before it.
+     */
+    private void decideTeleporterConstruction(BudgetAllocator allocator) {
+        TeleporterEvaluator evaluator = new TeleporterEvaluator(city.getSimulator(), city.getDemandIndex());
+        LazyGreedySelector<long[]> selector = new LazyGreedySelector<>(t -> evaluator.score((int) t[0], (int) t[1]));
+        for (long[] teleporter : evaluator.candidates(parallelScans && Runtime.getRuntime().availableProcessors() > 1)) {
+            selector.add(teleporter, teleporter[2]);
+        }
+        long[] teleporter;
+        while (selector.getPicks() < parameters.getTeleporterCandidates() && (teleporter = selector.next()) != null) {
+            allocator.add(String.format("TELEPORT %d %d", teleporter[0], teleporter[1]), TELEPORTER_COST, selector.getLastGain());
+            evaluator.accept((int) teleporter[0], (int) teleporter[1]);
+        }
+        System.err.println("Debug: Lazy greedy picked " + selector.getPicks() + " teleporters with "
+            + selector.getEvaluations() + " re-evaluations");
+    }
 
+    private void decidePodConstruction(BudgetAllocator allocator) {
         // Analyze current pod distribution and identify needs
-        Map<BuildingPair, Integer> routeNeedMap = analyzeRouteNeeds();
+        MonthSimulator sim = city.getSimulator();
+        RouteSynthesizer synthesizer = new RouteSynthesizer(sim, city.getDemandIndex());
+        Map<List<Integer>, Integer> routeNeedMap = analyzeRouteNeeds(synthesizer);
+        double podValue = parameters.getAstronautsPerPod() * POINTS_PER_ASTRONAUT;
 
         // Construct new pods for high-need routes
-        for (Map.Entry<BuildingPair, Integer> entry : routeNeedMap.entrySet()) {
-            BuildingPair route = entry.getKey();
+        for (Map.Entry<List<Integer>, Integer> entry : routeNeedMap.entrySet()) {
+            String stops = entry.getKey().stream().map(String::valueOf).collect(Collectors.joining(" "));
+            boolean contested = sim.isContested(entry.getKey().stream().mapToInt(Integer::intValue).toArray());
             int need = entry.getValue();
 
-            while (need > 0 && availableResources >= POD_COST) {
-                int podId = generateUniquePodId();
-                actions.add(String.format("POD %d %d %d", podId, route.b1.getId(), route.b2.getId()));
-                availableResources -= POD_COST;
+            while (need > 0) {
+                int podId = reservedPodIds.allocate(contested);
+                if (podId < 0) {
+                    break;
+                }
+                allocator.add(String.format("POD %d %s", podId, stops), POD_COST, podValue);
                 need--;
             }
         }
 
-        // Consider deconstructing underutilized pods
-        List<TransportPod> underutilizedPods = identifyUnderutilizedPods();
-        for (TransportPod pod : underutilizedPods) {
-            if (availableResources < POD_COST) {  // Only deconstruct if we're low on resources
-                actions.add(String.format("DESTROY %d", pod.getId()));
-                availableResources += POD_REFUND;
+        // Directions astronauts take that neither a pod nor a shuttle above covers
+        for (int[] loop : synthesizer.coverageLoops(MAX_COVERAGE_LOOP_LEGS)) {
+            int podId = reservedPodIds.allocate(sim.isContested(loop));
+            if (podId < 0) {
+                break;
             }
+            String stops = Arrays.stream(loop).mapToObj(String::valueOf).collect(Collectors.joining(" "));
+            allocator.add(String.format("POD %d %s", podId, stops), POD_COST, podValue);
         }
 
-        return actions;
-    }
-
-    private Map<BuildingPair, Integer> analyzeRouteNeeds() {
-        Map<BuildingPair, Integer> routeNeedMap = new HashMap<>();
-
-        for (Building start : buildingMap.values()) {
-            if (start instanceof LandingPad landingPad) {
-                Map<Integer, List<Building>> targetModules = getTargetModules(landingPad.getAstronautTypes());
-
-                for (Map.Entry<Integer, List<Building>> entry : targetModules.entrySet()) {
-                    int astronautType = entry.getKey();
-                    List<Building> modules = entry.getValue();
+        // Deconstructing underutilized pods frees resources, but loses what they carry, read
+        // from a simulated month: a seat taken over several legs counts as many astronauts
+        sim.simulate();
+        for (TransportPod pod : identifyUnderutilizedPods()) {
+            if (!destroyedPods.add(pod.getId())) {
+                continue;
+            }
+            double carried = sim.getPassengerLegs(pod.getId()) * POINTS_PER_ASTRONAUT;
+            allocator.add(String.format("DESTROY %d", pod.getId()), -POD_REFUND, -carried);
+        }
+    }
+
+    /**
+     * Pods needed on the way of the astronauts of each landing pad. Astronauts head for the
+     * closest module of their type; when several are as close, the pods decide which one
+     * they reach, so each type is split between its closest modules by a ModuleBalancer,
+     * for the balance points. A route follows the distance field of its module down from
+     * the pad, through a teleporter when astronauts would take it. The pod shuttles back the
+     * same way: a route that does not end where it started stops at its last stop.
+     */
+    private Map<List<Integer>, Integer> analyzeRouteNeeds(RouteSynthesizer synthesizer) {
+        MonthSimulator sim = city.getSimulator();
+        DemandIndex demand = city.getDemandIndex();
+        Map<List<Integer>, Integer> routeNeedMap = new HashMap<>();
+
+        for (int astronautType = 1; astronautType < DemandIndex.MAX_TYPES; astronautType++) {
+            int moduleCount = demand.getModuleCount(astronautType);
+            if (demand.getTypeDemand(astronautType) == 0 || moduleCount == 0 || !anyPadReaches(astronautType)) {
+                continue;
+            }
+            int[] modules = demand.getModules(astronautType);
+            byte[][] fields = new byte[moduleCount][];
+            for (int m = 0; m < moduleCount; m++) {
+                fields[m] = sim.computeModuleDistances(modules[m]);
+            }
 
-                    int astronautCount = landingPad.getAstronautCount(astronautType);
+            int[] supply = new int[demand.getPadCount()];
+            int[][] distance = new int[demand.getPadCount()][moduleCount];
+            for (int pad = 0; pad < demand.getPadCount(); pad++) {
+                // No pod carries more than the tubes can deliver within the month
+                supply[pad] = Math.min(demand.getDemand(pad, astronautType), throughput.getRouted(pad, astronautType));
+                int closest = sim.getDistance(astronautType, demand.getPadId(pad));
+                for (int m = 0; m < moduleCount; m++) {
+                    int hops = fields[m][demand.getPadId(pad)] & 0xFF;
+                    distance[pad][m] = hops == closest && hops != MonthSimulator.UNREACHABLE ? hops : -1;
+                }
+            }
 
-                    for (Building end : modules) {
-                        BuildingPair route = new BuildingPair(start, end, calculateDistance(start, end));
-                        int currentPods = countPodsOnRoute(route);
-                        int neededPods = (int) Math.ceil((double) astronautCount / MAX_POD_CAPACITY) - currentPods;
-                        if (neededPods > 0) {
-                            routeNeedMap.put(route, neededPods);
-                        }
+            ModuleBalancer balancer = new ModuleBalancer(supply, distance);
+            for (int pad = 0; pad < demand.getPadCount(); pad++) {
+                for (int m = 0; m < moduleCount; m++) {
+                    int astronautCount = balancer.getFlow(pad, m);
+                    if (astronautCount == 0) {
+                        continue;
+                    }
+                    List<Integer> route = followDistanceField(sim, fields[m], demand.getPadId(pad));
+                    if (route.size() < 2) {
+                        continue;
+                    }
+                    List<Integer> shuttle = new ArrayList<>();
+                    for (int stop : synthesizer.shuttle(route)) {
+                        shuttle.add(stop);
+                    }
+                    int currentPods = countPodsOnRoute(sim, shuttle);
+                    int neededPods = (int) Math.ceil(astronautCount / parameters.getAstronautsPerPod()) - currentPods;
+                    if (neededPods > 0) {
+                        routeNeedMap.merge(shuttle, neededPods, Integer::sum);
                     }
                 }
             }
@@ -332,16 +473,60 @@ class TransportationAI {
         return routeNeedMap;
     }
 
-    private Map<Integer, List<Building>> getTargetModules(Set<Integer> astronautTypes) {
-        Map<Integer, List<Building>> targetModules = new HashMap<>();
-        for (int astronautType : astronautTypes) {
-            targetModules.put(astronautType, buildingMap.values().stream() .filter(b -> b instanceof LunarModule && ((LunarModule) b).getModuleType() == astronautType) .collect(Collectors.toList()));
+    private boolean anyPadReaches(int type) {
+        DemandIndex demand = city.getDemandIndex();
+        for (int pad = 0; pad < demand.getPadCount(); pad++) {
+            if (demand.getDemand(pad, type) > 0 && reachability.canReach(demand.getPadId(pad), type)) {
+                return true;
+            }
         }
-        return targetModules;
+        return false;
     }
 
-    private int countPodsOnRoute(BuildingPair route) {
-        return (int) podMap.values().stream().filter(pod -> pod.getRoute().contains(route.b1) && pod.getRoute().contains(route.b2)).count();
+    /**
+     * Stops from the given building down a distance field, ending at the module or at the
+     * teleporter entrance that leads there. Empty when the module cannot be reached.
+     */
+    private List<Integer> followDistanceField(MonthSimulator sim, byte[] field, int id) {
+        List<Integer> route = new ArrayList<>();
+        int distance = field[id] & 0xFF;
+        if (distance == MonthSimulator.UNREACHABLE) {
+            return route;
+        }
+        int exit = sim.getTeleporterExit(id);
+        if (exit >= 0 && (field[exit] & 0xFF) <= distance) {
+            id = exit;
+            distance = field[exit] & 0xFF;
+        }
+        route.add(id);
+        while (distance > 0) {
+            int next = -1;
+            for (int i = 0; i < sim.getDegree(id) && next < 0; i++) {
+                int neighbor = sim.getNeighbor(id, i);
+                if ((field[neighbor] & 0xFF) == distance - 1) {
+                    next = neighbor;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            id = next;
+            distance--;
+            route.add(id);
+        }
+        return route;
+    }
+
+    // Pods already running along the route, on its busiest tube in the direction of travel
+    private int countPodsOnRoute(MonthSimulator sim, List<Integer> route) {
+        int pods = 0;
+        for (int i = 0; i + 1 < route.size(); i++) {
+            int tube = sim.tubeBetween(route.get(i), route.get(i + 1));
+            if (tube >= 0) {
+                pods = Math.max(pods, sim.getPodsLeavingBy(tube, route.get(i)));
+            }
+        }
+        return pods;
     }
 
     private List<TransportPod> identifyUnderutilizedPods() {
@@ -349,79 +534,55 @@ class TransportationAI {
     }
 
     private boolean isPodUnderutilized(TransportPod pod) {
-        // A pod is considered underutilized if it's been operating at less than 50% capacity for the last 5 days
-        // This is a simplified version; in a real-world scenario, we'd need to track pod utilization over time
-        return pod.getPassengers().size() < MAX_POD_CAPACITY / 2;
-    }
-
-    private int generateUniquePodId() {
-        AtomicInteger id = new AtomicInteger(1);
-        while (podMap.values().stream().anyMatch(pod -> pod.getId() == id.get())) {
-            id.incrementAndGet();
-        }
-        return id.get();
+        // Seats taken over the legs flown in a simulated month, a pod stuck all month counting as empty
+        double load = city.getSimulator().getPodLoad(pod.getId());
+        return load < parameters.getUnderutilizedLoadFraction();
     }
 
-    private List<String> decidePodRoutes() {
+    /**
+     * Looping routes are shortened in tube hops, and the rebuild is offered to the allocator,
+     * worth it when the pod comes back to each stop sooner. Routes ending elsewhere get the
+     * best path between their ends, returned as actions.
+     */
+    private List<String> decidePodRoutes(BudgetAllocator allocator, long deadline) {
         List<String> actions = new ArrayList<>();
+        RouteOptimizer optimizer = new RouteOptimizer(city.getSimulator());
+        // A shorter tour may reverse a loop or skip a direction only it covers
+        RouteSynthesizer synthesizer = new RouteSynthesizer(city.getSimulator(), city.getDemandIndex());
+        long optimizationDeadline = Math.min(deadline, System.nanoTime() + ROUTE_OPTIMIZATION_NANOS);
 
         for (TransportPod pod : podMap.values()) {
-            List<Building> optimizedRoute = optimizePodRoute(pod);
-            if (!optimizedRoute.equals(pod.getRoute())) {
-                actions.add(formatPodRouteAction(pod.getId(), optimizedRoute));
+            List<Building> currentRoute = pod.getRoute();
+            if (currentRoute.isEmpty()) {
+                continue;
             }
-        }
-
-        return actions;
-    }
-
-    private List<Building> optimizePodRoute(TransportPod pod) {
-        List<Building> currentRoute = pod.getRoute();
-        Building start = currentRoute.get(0);
-        Building end = currentRoute.get(currentRoute.size() - 1);
-
-        // If it's a circular route, we'll optimize it as is
-        // Otherwise, we'll find the best route between start and end
-        if (start.equals(end)) {
-            return optimizeCircularRoute(currentRoute);
-        } else {
-            return findOptimalRoute(start, end);
-        }
-    }
-
-    private List<Building> optimizeCircularRoute(List<Building> currentRoute) {
-        // Implement Traveling Salesman Problem (TSP) approximation
-        // For simplicity, we'll use a 2-opt algorithm here
-        List<Building> optimizedRoute = new ArrayList<>(currentRoute);
-        boolean improved = true;
-        while (improved) {
-            improved = false;
-            for (int i = 0; i < optimizedRoute.size() - 2; i++) {
-                for (int j = i + 2; j < optimizedRoute.size() - 1; j++) {
-                    if (tryTwoOptSwap(optimizedRoute, i, j)) {
-                        improved = true;
-                    }
+            Building start = currentRoute.get(0);
+            Building end = currentRoute.get(currentRoute.size() - 1);
+            if (start.equals(end)) {
+                if (destroyedPods.contains(pod.getId())) {
+                    continue;
+                }
+                int[] stops = currentRoute.stream().mapToInt(Building::getId).toArray();
+                int[] optimized = optimizer.optimize(stops, MAX_ROUTE_ITERATIONS, optimizationDeadline);
+                if (optimized != null && synthesizer.keepsNeededArcs(stops, optimized)) {
+                    // Over the month, the shorter cycle adds the days the old one would have
+                    // spent on the legs saved
+                    int legs = stops.length - 1;
+                    double savedDays = (double) MonthSimulator.DAYS * (legs - (optimized.length - 1)) / legs;
+                    String route = Arrays.stream(optimized).mapToObj(String::valueOf).collect(Collectors.joining(" "));
+                    allocator.add(String.format("DESTROY %d;POD %d %s", pod.getId(), pod.getId(), route),
+                        POD_COST - POD_REFUND, savedDays * POINTS_PER_DELAY_DAY);
+                    destroyedPods.add(pod.getId());
+                }
+            } else {
+                List<Building> optimizedRoute = findOptimalRoute(start, end);
+                if (!optimizedRoute.equals(currentRoute)) {
+                    actions.add(formatPodRouteAction(pod.getId(), optimizedRoute));
                 }
             }
         }
-        return optimizedRoute;
-    }
-
-    private boolean tryTwoOptSwap(List<Building> route, int i, int j) {
-        Building a = route.get(i);
-        Building b = route.get(i + 1);
-        Building c = route.get(j);
-        Building d = route.get(j + 1);
 
-        double currentDistance = calculateDistance(a, b) + calculateDistance(c, d);
-        double newDistance = calculateDistance(a, c) + calculateDistance(b, d);
-
-        if (newDistance < currentDistance) {
-            // Perform the 2-opt swap
-            Collections.reverse(route.subList(i + 1, j + 1));
-            return true;
-        }
-        return false;
+        return actions;
     }
 
     private List<Building> findOptimalRoute(Building start, Building end) {
@@ -0,0 +1,74 @@
+import java.util.*;
+
+/**
+ * Fixed-size, open-addressed map from a network state hash to its simulated month score.
+ * Probing is linear and bounded; when every probed slot is taken the home slot is
+ * overwritten, so the table never grows or allocates after construction.
+ */
+class TranspositionTable {
+    public static final int MISSING = Integer.MIN_VALUE;
+
+    private static final int MAX_PROBES = 8;
+
+    private final long[] keys;
+    private final int[] values;
+    private final int mask;
+    private int hits;
+    private int misses;
+
+    public TranspositionTable(int log2Capacity) {
+        this.keys = new long[1 << log2Capacity];
+        this.values = new int[1 << log2Capacity];
+        this.mask = keys.length - 1;
+    }
+
+    public int get(long hash) {
+        long key = hash == 0 ? 1 : hash;
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            long stored = keys[(slot + probe) & mask];
+            if (stored == key) {
+                hits++;
+                return values[(slot + probe) & mask];
+            }
+            if (stored == 0) {
+                break;
+            }
+        }
+        misses++;
+        return MISSING;
+    }
+
+    public void put(long hash, int value) {
+        long key = hash == 0 ? 1 : hash;
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int index = (slot + probe) & mask;
+            if (keys[index] == 0 || keys[index] == key) {
+                keys[index] = key;
+                values[index] = value;
+                return;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    /**
+     * Forgets every entry. Scores depend on the buildings and astronauts, which are not part
+     * of the hash, so the table must be cleared whenever those change.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        hits = 0;
+        misses = 0;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+}
@@ -10,9 +10,9 @@ class Tube {
         this.start = start;
         this.end = end;
         this.capacity = capacity;
+        this.distance = calculateDistance();
         this.baseCost = calculateCost();
         this.upgradeCost = baseCost;
-        this.distance = calculateDistance();
     }
 
     private double calculateDistance() {
@@ -0,0 +1,39 @@
+/**
+ * 64-bit Zobrist keys of the network elements. The keys are drawn from a fixed mixing
+ * function instead of a random table, so any building pair or route gets a stable key
+ * without allocating one per possible element. The state hash of a network is the XOR
+ * of the keys of its tubes (with their capacity), teleporters and pods.
+ */
+class Zobrist {
+    private static final long TUBE = 0x1L << 60;
+    private static final long TELEPORTER = 0x2L << 60;
+    private static final long POD = 0x3L << 60;
+
+    private Zobrist() {
+    }
+
+    public static long tubeKey(int buildingId1, int buildingId2, int capacity) {
+        long low = Math.min(buildingId1, buildingId2);
+        long high = Math.max(buildingId1, buildingId2);
+        return mix(TUBE ^ (low << 40) ^ (high << 20) ^ capacity);
+    }
+
+    public static long teleporterKey(int entranceId, int exitId) {
+        return mix(TELEPORTER ^ ((long) entranceId << 20) ^ exitId);
+    }
+
+    public static long podKey(int podId, int[] stops) {
+        long hash = mix(POD ^ podId);
+        for (int stop : stops) {
+            hash = mix(hash ^ stop);
+        }
+        return hash;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
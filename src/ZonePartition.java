@@ -0,0 +1,170 @@
+import java.util.*;
+
+/**
+ * Splits the buildings into spatial zones of about the given size, so the plan search can
+ * work on one zone at a time instead of drawing its moves from the whole city. Zones come
+ * from k-means on the building coordinates, seeded with the farthest point each time so
+ * the result only depends on the buildings.
+ *
+ * Between zones, the network is seen contracted: a zone is a node, and each pair of zones
+ * that some tube candidate joins keeps its shortest one as their link. Tubes inside a zone
+ * only compete with the few candidates of the zone, and whatever crosses zones goes through
+ * the links or teleporters.
+ */
+class ZonePartition {
+    private static final int LLOYD_ITERATIONS = 10;
+
+    private final List<List<Building>> members = new ArrayList<>();
+    private final List<List<int[]>> zoneEdges = new ArrayList<>();
+    private final List<int[]> links = new ArrayList<>();
+    private final Map<Integer, Integer> zoneOf = new HashMap<>();
+
+    public ZonePartition(List<Building> buildings, List<int[]> tubeCandidates, int zoneSize) {
+        int[] assignment = cluster(buildings, Math.max(1, (buildings.size() + zoneSize - 1) / zoneSize));
+        int zoneCount = 0;
+        for (int zone : assignment) {
+            zoneCount = Math.max(zoneCount, zone + 1);
+        }
+        for (int zone = 0; zone < zoneCount; zone++) {
+            members.add(new ArrayList<>());
+            zoneEdges.add(new ArrayList<>());
+        }
+        for (int i = 0; i < buildings.size(); i++) {
+            members.get(assignment[i]).add(buildings.get(i));
+            zoneOf.put(buildings.get(i).getId(), assignment[i]);
+        }
+
+        Map<Long, int[]> shortestLink = new HashMap<>();
+        Map<Long, Long> shortestLength = new HashMap<>();
+        Map<Integer, Building> byId = new HashMap<>();
+        for (Building building : buildings) {
+            byId.put(building.getId(), building);
+        }
+        for (int[] edge : tubeCandidates) {
+            Integer zone1 = zoneOf.get(edge[0]);
+            Integer zone2 = zoneOf.get(edge[1]);
+            if (zone1 == null || zone2 == null) {
+                continue;
+            }
+            if (zone1.equals(zone2)) {
+                zoneEdges.get(zone1).add(edge);
+                continue;
+            }
+            long key = (long) Math.min(zone1, zone2) * zoneCount + Math.max(zone1, zone2);
+            long length = squaredLength(byId.get(edge[0]), byId.get(edge[1]));
+            if (length < shortestLength.getOrDefault(key, Long.MAX_VALUE)) {
+                shortestLength.put(key, length);
+                shortestLink.put(key, edge);
+            }
+        }
+        links.addAll(shortestLink.values());
+    }
+
+    public int getZoneCount() {
+        return members.size();
+    }
+
+    // Zone of the building, -1 for a building unknown to the partition
+    public int getZone(int buildingId) {
+        return zoneOf.getOrDefault(buildingId, -1);
+    }
+
+    public List<Building> getMembers(int zone) {
+        return members.get(zone);
+    }
+
+    // Tube candidates with both ends in the zone
+    public List<int[]> getZoneEdges(int zone) {
+        return zoneEdges.get(zone);
+    }
+
+    // Edges of the contracted graph, the shortest tube candidate between two zones
+    public List<int[]> getLinks() {
+        return links;
+    }
+
+    private static int[] cluster(List<Building> buildings, int zoneCount) {
+        int n = buildings.size();
+        int[] assignment = new int[n];
+        if (zoneCount == 1 || n == 0) {
+            return assignment;
+        }
+        // Farthest point seeding, from the first building
+        double[] centerX = new double[zoneCount];
+        double[] centerY = new double[zoneCount];
+        double[] nearest = new double[n];
+        Arrays.fill(nearest, Double.MAX_VALUE);
+        int seed = 0;
+        for (int zone = 0; zone < zoneCount; zone++) {
+            centerX[zone] = buildings.get(seed).getX();
+            centerY[zone] = buildings.get(seed).getY();
+            int farthest = 0;
+            for (int i = 0; i < n; i++) {
+                nearest[i] = Math.min(nearest[i], squaredDistance(buildings.get(i), centerX[zone], centerY[zone]));
+                if (nearest[i] > nearest[farthest]) {
+                    farthest = i;
+                }
+            }
+            seed = farthest;
+        }
+
+        double[] sumX = new double[zoneCount];
+        double[] sumY = new double[zoneCount];
+        int[] count = new int[zoneCount];
+        for (int iteration = 0; iteration < LLOYD_ITERATIONS; iteration++) {
+            boolean moved = false;
+            for (int i = 0; i < n; i++) {
+                int best = 0;
+                for (int zone = 1; zone < zoneCount; zone++) {
+                    if (squaredDistance(buildings.get(i), centerX[zone], centerY[zone])
+                        < squaredDistance(buildings.get(i), centerX[best], centerY[best])) {
+                        best = zone;
+                    }
+                }
+                moved |= iteration == 0 || assignment[i] != best;
+                assignment[i] = best;
+            }
+            if (!moved) {
+                break;
+            }
+            Arrays.fill(sumX, 0);
+            Arrays.fill(sumY, 0);
+            Arrays.fill(count, 0);
+            for (int i = 0; i < n; i++) {
+                sumX[assignment[i]] += buildings.get(i).getX();
+                sumY[assignment[i]] += buildings.get(i).getY();
+                count[assignment[i]]++;
+            }
+            // An emptied zone keeps its center, and may win buildings back
+            for (int zone = 0; zone < zoneCount; zone++) {
+                if (count[zone] > 0) {
+                    centerX[zone] = sumX[zone] / count[zone];
+                    centerY[zone] = sumY[zone] / count[zone];
+                }
+            }
+        }
+        // Zones left empty are dropped, the others numbered in order
+        int[] renumbered = new int[zoneCount];
+        Arrays.fill(renumbered, -1);
+        int next = 0;
+        for (int i = 0; i < n; i++) {
+            if (renumbered[assignment[i]] < 0) {
+                renumbered[assignment[i]] = next++;
+            }
+            assignment[i] = renumbered[assignment[i]];
+        }
+        return assignment;
+    }
+
+    private static double squaredDistance(Building building, double x, double y) {
+        double dx = building.getX() - x;
+        double dy = building.getY() - y;
+        return dx * dx + dy * dy;
+    }
+
+    private static long squaredLength(Building a, Building b) {
+        long dx = a.getX() - b.getX();
+        long dy = a.getY() - b.getY();
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,271 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a suite of test cases against one or two compiled versions of the bot, every game on
+ * its own virtual thread. The bot turns themselves run on a fixed carrier pool sized to the
+ * core count, so the games never oversubscribe the CPU and the measured turn latencies stay
+ * close to what a single game would see.
+ *
+ * Usage: GameFarm classesDirA [classesDirB] [--suite dir | --random count] [--seed seed] [--verbose]
+ */
+class GameFarm {
+    private static final long FIRST_TURN_BUDGET_NANOS = 1_000_000_000L;
+    private static final long TURN_BUDGET_NANOS = 500_000_000L;
+
+    private final ExecutorService carrierPool;
+
+    public GameFarm(int carriers) {
+        this.carrierPool = Executors.newFixedThreadPool(carriers);
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<BotVersion> versions = new ArrayList<>();
+        Path suiteDir = null;
+        int randomCount = 50;
+        long seed = 1;
+        boolean verbose = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--suite" -> suiteDir = Paths.get(args[++i]);
+                case "--random" -> randomCount = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--verbose" -> verbose = true;
+                default -> versions.add(new BotVersion(Paths.get(args[i])));
+            }
+        }
+        if (versions.isEmpty() || versions.size() > 2) {
+            System.out.println("Usage: GameFarm classesDirA [classesDirB] [--suite dir | --random count] [--seed seed] [--verbose]");
+            return;
+        }
+
+        List<TestCase> suite = new ArrayList<>();
+        if (suiteDir != null) {
+            suite.addAll(TestCase.loadSuite(suiteDir));
+        } else {
+            for (int i = 0; i < randomCount; i++) {
+                suite.add(TestCase.random(seed + i));
+            }
+        }
+
+        // The bots log heavily on stderr, which would serialize every game on one stream
+        PrintStream stderr = System.err;
+        if (!verbose) {
+            System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        }
+        GameFarm farm = new GameFarm(Runtime.getRuntime().availableProcessors());
+        long start = System.nanoTime();
+        List<List<GameRecord>> results;
+        try {
+            results = farm.run(versions, suite);
+        } finally {
+            farm.shutdown();
+            System.setErr(stderr);
+        }
+
+        System.out.printf("%d games on %d carriers in %.1fs%n", versions.size() * suite.size(),
+            Runtime.getRuntime().availableProcessors(), (System.nanoTime() - start) / 1e9);
+        for (int v = 0; v < versions.size(); v++) {
+            printSummary(versions.get(v).name, results.get(v));
+        }
+        if (versions.size() == 2) {
+            printComparison(results.get(0), results.get(1));
+        }
+    }
+
+    /**
+     * Plays every test case with every version and returns the records per version, in
+     * suite order.
+     */
+    public List<List<GameRecord>> run(List<BotVersion> versions, List<TestCase> suite) throws InterruptedException {
+        ExecutorService games = newGameExecutor();
+        try {
+            List<List<Future<GameRecord>>> futures = new ArrayList<>();
+            for (BotVersion version : versions) {
+                List<Future<GameRecord>> versionGames = new ArrayList<>();
+                for (TestCase testCase : suite) {
+                    versionGames.add(games.submit(() -> playGame(version, testCase)));
+                }
+                futures.add(versionGames);
+            }
+
+            List<List<GameRecord>> results = new ArrayList<>();
+            for (List<Future<GameRecord>> versionGames : futures) {
+                List<GameRecord> records = new ArrayList<>();
+                for (Future<GameRecord> game : versionGames) {
+                    try {
+                        records.add(game.get());
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException("Game failed outside of the bot", e.getCause());
+                    }
+                }
+                results.add(records);
+            }
+            return results;
+        } finally {
+            games.shutdownNow();
+        }
+    }
+
+    public void shutdown() {
+        carrierPool.shutdown();
+    }
+
+    private GameRecord playGame(BotVersion version, TestCase testCase) {
+        Object player = version.newPlayer();
+        List<Long> latencies = new ArrayList<>();
+        LocalReferee.Outcome outcome = new LocalReferee(testCase).play(input -> onCarrier(() -> {
+            long start = System.nanoTime();
+            String output = version.playTurn(player, input);
+            latencies.add(System.nanoTime() - start);
+            return output;
+        }));
+        return new GameRecord(outcome, latencies.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    private <T> T onCarrier(Callable<T> work) {
+        try {
+            return carrierPool.submit(work).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a carrier", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static ExecutorService newGameExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Virtual threads need Java 21, older runtimes get one platform thread per game
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private static void printSummary(String name, List<GameRecord> records) {
+        long totalScore = 0;
+        int crashes = 0;
+        int ignored = 0;
+        int overBudget = 0;
+        List<Long> allLatencies = new ArrayList<>();
+        for (GameRecord record : records) {
+            totalScore += record.outcome.score;
+            ignored += record.outcome.ignoredActions;
+            if (record.outcome.error != null) {
+                crashes++;
+            }
+            for (int turn = 0; turn < record.latencies.length; turn++) {
+                long budget = turn == 0 ? FIRST_TURN_BUDGET_NANOS : TURN_BUDGET_NANOS;
+                if (record.latencies[turn] > budget) {
+                    overBudget++;
+                }
+                allLatencies.add(record.latencies[turn]);
+            }
+        }
+        long[] sorted = allLatencies.stream().mapToLong(Long::longValue).sorted().toArray();
+
+        System.out.println("== " + name);
+        System.out.printf("  games %d, total score %d, mean %.1f, crashes %d, ignored actions %d%n",
+            records.size(), totalScore, (double) totalScore / Math.max(1, records.size()), crashes, ignored);
+        System.out.printf("  turn latency ms: p50 %.2f, p99 %.2f, max %.2f, over budget %d/%d%n",
+            percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.99) / 1e6,
+            (sorted.length == 0 ? 0 : sorted[sorted.length - 1]) / 1e6, overBudget, sorted.length);
+    }
+
+    private static void printComparison(List<GameRecord> first, List<GameRecord> second) {
+        int wins = 0;
+        int losses = 0;
+        long difference = 0;
+        for (int i = 0; i < first.size(); i++) {
+            int delta = second.get(i).outcome.score - first.get(i).outcome.score;
+            difference += delta;
+            if (delta > 0) {
+                wins++;
+            } else if (delta < 0) {
+                losses++;
+            }
+        }
+        System.out.printf("== second vs first: %d better, %d worse, %d equal, mean difference %.1f%n",
+            wins, losses, first.size() - wins - losses, (double) difference / Math.max(1, first.size()));
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (fraction * sorted.length))];
+    }
+
+    /**
+     * A compiled version of the bot, loaded in its own class loader so that two versions
+     * of the same classes can play side by side.
+     */
+    static class BotVersion {
+        final String name;
+        private final Constructor<?> constructor;
+        private final Method playTurn;
+
+        BotVersion(Path classesDir) throws Exception {
+            this.name = classesDir.toString();
+            URLClassLoader loader = new URLClassLoader(new URL[]{classesDir.toUri().toURL()},
+                ClassLoader.getPlatformClassLoader());
+            Class<?> playerClass = loader.loadClass("Player");
+            this.constructor = playerClass.getDeclaredConstructor();
+            this.constructor.setAccessible(true);
+            this.playTurn = playerClass.getDeclaredMethod("playTurn", String.class);
+            this.playTurn.setAccessible(true);
+        }
+
+        Object newPlayer() {
+            try {
+                return constructor.newInstance();
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException(e.getCause());
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        String playTurn(Object player, String input) {
+            try {
+                return (String) playTurn.invoke(player, input);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    static class GameRecord {
+        final LocalReferee.Outcome outcome;
+        final long[] latencies;
+
+        GameRecord(LocalReferee.Outcome outcome, long[] latencies) {
+            this.outcome = outcome;
+            this.latencies = latencies;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Plays a test case against a bot in-process: it writes the turn input of each month,
+ * applies the returned actions with the same checks as the game, then scores the month
+ * with the {@link MonthSimulator}. Invalid actions are ignored, as in the game.
+ */
+class LocalReferee {
+    private static final int TELEPORTER_COST = 5000;
+    private static final int POD_COST = 1000;
+    private static final int POD_REFUND = 750;
+    private static final int MAX_TUBES_PER_BUILDING = 5;
+    private static final int MAX_POD_ID = 500;
+
+    private final TestCase testCase;
+    private final MonthSimulator simulator;
+    private final Map<Integer, int[]> coordinates;
+    private final List<int[]> tubes;
+    private final List<int[]> teleporters;
+    private final TreeMap<Integer, int[]> pods;
+    private int resources;
+    private int ignoredActions;
+
+    public LocalReferee(TestCase testCase) {
+        this.testCase = testCase;
+        this.simulator = new MonthSimulator();
+        this.coordinates = new HashMap<>();
+        this.tubes = new ArrayList<>();
+        this.teleporters = new ArrayList<>();
+        this.pods = new TreeMap<>();
+    }
+
+    public Outcome play(UnaryOperator<String> bot) {
+        int score = 0;
+        int turns = 0;
+        for (TestCase.Month month : testCase.getMonths()) {
+            for (String line : month.buildingLines) {
+                addBuilding(line);
+            }
+            resources += month.income;
+
+            String output;
+            try {
+                output = bot.apply(formatInput(month));
+            } catch (RuntimeException e) {
+                return new Outcome(testCase.getName(), score, turns, ignoredActions, e.toString());
+            }
+            turns++;
+
+            applyActions(output);
+            score += simulator.simulate();
+            resources += resources / 10;
+        }
+        return new Outcome(testCase.getName(), score, turns, ignoredActions, null);
+    }
+
+    private void addBuilding(String line) {
+        String[] parts = line.trim().split("\\s+");
+        int type = Integer.parseInt(parts[0]);
+        int id = Integer.parseInt(parts[1]);
+        coordinates.put(id, new int[]{Integer.parseInt(parts[2]), Integer.parseInt(parts[3])});
+        if (type == 0) {
+            int[] astronauts = new int[Integer.parseInt(parts[4])];
+            for (int i = 0; i < astronauts.length; i++) {
+                astronauts[i] = Integer.parseInt(parts[5 + i]);
+            }
+            simulator.addLandingPad(id, astronauts);
+        } else {
+            simulator.addModule(id, type);
+        }
+    }
+
+    private String formatInput(TestCase.Month month) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(resources).append('\n');
+        sb.append(tubes.size() + teleporters.size()).append('\n');
+        for (int[] tube : tubes) {
+            sb.append(tube[0]).append(' ').append(tube[1]).append(' ')
+                .append(simulator.getTubeCapacity(tube[2])).append('\n');
+        }
+        for (int[] teleporter : teleporters) {
+            sb.append(teleporter[0]).append(' ').append(teleporter[1]).append(" 0\n");
+        }
+        sb.append(pods.size()).append('\n');
+        for (Map.Entry<Integer, int[]> pod : pods.entrySet()) {
+            sb.append(pod.getKey()).append(' ').append(pod.getValue().length);
+            for (int stop : pod.getValue()) {
+                sb.append(' ').append(stop);
+            }
+            sb.append('\n');
+        }
+        sb.append(month.buildingLines.size()).append('\n');
+        for (String line : month.buildingLines) {
+            sb.append(line).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private void applyActions(String output) {
+        for (String action : output.split(";")) {
+            String[] parts = action.trim().split("\\s+");
+            boolean applied;
+            try {
+                switch (parts[0]) {
+                    case "TUBE" -> applied = buildTube(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+                    case "UPGRADE" -> applied = upgradeTube(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+                    case "TELEPORT" -> applied = buildTeleporter(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+                    case "POD" -> applied = buildPod(parts);
+                    case "DESTROY" -> applied = destroyPod(Integer.parseInt(parts[1]));
+                    case "WAIT", "" -> applied = true;
+                    default -> applied = false;
+                }
+            } catch (RuntimeException e) {
+                applied = false;
+            }
+            if (!applied) {
+                ignoredActions++;
+            }
+        }
+    }
+
+    private boolean buildTube(int a, int b) {
+        if (a == b || !coordinates.containsKey(a) || !coordinates.containsKey(b) || simulator.tubeBetween(a, b) >= 0) {
+            return false;
+        }
+        if (simulator.getDegree(a) >= MAX_TUBES_PER_BUILDING || simulator.getDegree(b) >= MAX_TUBES_PER_BUILDING) {
+            return false;
+        }
+        int[] p = coordinates.get(a);
+        int[] q = coordinates.get(b);
+        int cost = tubeCost(p, q);
+        if (cost > resources) {
+            return false;
+        }
+        for (Map.Entry<Integer, int[]> building : coordinates.entrySet()) {
+            int id = building.getKey();
+            if (id != a && id != b && pointOnSegment(building.getValue(), p, q)) {
+                return false;
+            }
+        }
+        for (int[] tube : tubes) {
+            if (segmentsIntersect(p, q, coordinates.get(tube[0]), coordinates.get(tube[1]))) {
+                return false;
+            }
+        }
+        tubes.add(new int[]{a, b, simulator.addTube(a, b, 1)});
+        resources -= cost;
+        return true;
+    }
+
+    private boolean upgradeTube(int a, int b) {
+        int tube = simulator.tubeBetween(a, b);
+        if (tube < 0) {
+            return false;
+        }
+        int capacity = simulator.getTubeCapacity(tube) + 1;
+        int cost = tubeCost(coordinates.get(a), coordinates.get(b)) * capacity;
+        if (cost > resources) {
+            return false;
+        }
+        simulator.setTubeCapacity(tube, capacity);
+        resources -= cost;
+        return true;
+    }
+
+    private boolean buildTeleporter(int entrance, int exit) {
+        if (entrance == exit || !coordinates.containsKey(entrance) || !coordinates.containsKey(exit)
+            || simulator.hasTeleporter(entrance) || simulator.hasTeleporter(exit) || resources < TELEPORTER_COST) {
+            return false;
+        }
+        simulator.addTeleporter(entrance, exit);
+        teleporters.add(new int[]{entrance, exit});
+        resources -= TELEPORTER_COST;
+        return true;
+    }
+
+    private boolean buildPod(String[] parts) {
+        int podId = Integer.parseInt(parts[1]);
+        if (podId < 1 || podId > MAX_POD_ID || pods.containsKey(podId) || parts.length < 4 || resources < POD_COST) {
+            return false;
+        }
+        int[] stops = new int[parts.length - 2];
+        for (int i = 0; i < stops.length; i++) {
+            stops[i] = Integer.parseInt(parts[i + 2]);
+        }
+        for (int i = 0; i + 1 < stops.length; i++) {
+            if (simulator.tubeBetween(stops[i], stops[i + 1]) < 0) {
+                return false;
+            }
+        }
+        pods.put(podId, stops);
+        simulator.setPod(podId, stops);
+        resources -= POD_COST;
+        return true;
+    }
+
+    private boolean destroyPod(int podId) {
+        if (pods.remove(podId) == null) {
+            return false;
+        }
+        simulator.removePod(podId);
+        resources += POD_REFUND;
+        return true;
+    }
+
+    private static int tubeCost(int[] p, int[] q) {
+        return (int) Math.floor(Math.hypot(p[0] - q[0], p[1] - q[1]) * 10);
+    }
+
+    private static boolean pointOnSegment(int[] a, int[] b, int[] c) {
+        long cross = (long) (c[0] - b[0]) * (a[1] - b[1]) - (long) (c[1] - b[1]) * (a[0] - b[0]);
+        return cross == 0
+            && Math.min(b[0], c[0]) <= a[0] && a[0] <= Math.max(b[0], c[0])
+            && Math.min(b[1], c[1]) <= a[1] && a[1] <= Math.max(b[1], c[1]);
+    }
+
+    private static int orientation(int[] p1, int[] p2, int[] p3) {
+        return Integer.signum((p3[1] - p1[1]) * (p2[0] - p1[0]) - (p2[1] - p1[1]) * (p3[0] - p1[0]));
+    }
+
+    private static boolean segmentsIntersect(int[] a, int[] b, int[] c, int[] d) {
+        return orientation(a, b, c) * orientation(a, b, d) < 0 && orientation(c, d, a) * orientation(c, d, b) < 0;
+    }
+
+    static class Outcome {
+        final String testCase;
+        final int score;
+        final int turns;
+        final int ignoredActions;
+        final String error;
+
+        Outcome(String testCase, int score, int turns, int ignoredActions, String error) {
+            this.testCase = testCase;
+            this.score = score;
+            this.turns = turns;
+            this.ignoredActions = ignoredActions;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+
+/**
+ * Tunes the {@link AIParameters} vector with successive halving: every candidate plays a few
+ * cities, the best third moves on to a suite three times larger, until one is left. Games
+ * of a rung run in parallel on one thread per core, and every candidate of a rung plays the
+ * same cities so that their scores stay comparable.
+ *
+ * Usage: ParameterTuner [--candidates n] [--cases n] [--eta n] [--seed seed] [--write src/AIParameters.java]
+ */
+class ParameterTuner {
+    private final ExecutorService pool;
+    private final List<TestCase> suite;
+
+    public ParameterTuner(int threads, List<TestCase> suite) {
+        this.pool = Executors.newFixedThreadPool(threads);
+        this.suite = suite;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int candidateCount = 27;
+        int initialCases = 4;
+        int eta = 3;
+        long seed = 1;
+        Path output = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--candidates" -> candidateCount = Integer.parseInt(args[++i]);
+                case "--cases" -> initialCases = Integer.parseInt(args[++i]);
+                case "--eta" -> eta = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--write" -> output = Paths.get(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+
+        int rungs = 1;
+        for (int remaining = candidateCount; remaining > 1; remaining = (remaining + eta - 1) / eta) {
+            rungs++;
+        }
+        List<TestCase> suite = new ArrayList<>();
+        int maxCases = initialCases * (int) Math.pow(eta, rungs - 1);
+        for (int i = 0; i < maxCases; i++) {
+            suite.add(TestCase.random(seed * 1_000_003L + i));
+        }
+
+        Random random = new Random(seed);
+        List<AIParameters> candidates = new ArrayList<>();
+        candidates.add(AIParameters.DEFAULT);
+        while (candidates.size() < candidateCount) {
+            double[] vector = new double[AIParameters.NAMES.length];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = AIParameters.LOWER[i] + random.nextDouble() * (AIParameters.UPPER[i] - AIParameters.LOWER[i]);
+            }
+            candidates.add(new AIParameters(vector));
+        }
+
+        PrintStream stderr = System.err;
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        ParameterTuner tuner = new ParameterTuner(Runtime.getRuntime().availableProcessors(), suite);
+        AIParameters best;
+        try {
+            best = tuner.successiveHalving(candidates, initialCases, eta);
+        } finally {
+            tuner.shutdown();
+            System.setErr(stderr);
+        }
+
+        System.out.println("Best: " + best);
+        System.out.println("    public static final AIParameters DEFAULT = " + best.toJavaExpression() + ";");
+        if (output != null) {
+            writeDefault(output, best);
+            System.out.println("Written to " + output);
+        }
+    }
+
+    public AIParameters successiveHalving(List<AIParameters> initial, int initialCases, int eta) throws InterruptedException {
+        List<Candidate> candidates = new ArrayList<>();
+        for (AIParameters parameters : initial) {
+            candidates.add(new Candidate(parameters));
+        }
+
+        int cases = Math.min(initialCases, suite.size());
+        while (true) {
+            evaluate(candidates, cases);
+            candidates.sort(Comparator.comparingDouble((Candidate c) -> c.meanScore()).reversed());
+            System.out.printf("rung: %d candidates on %d cities, best mean %.1f (%s)%n",
+                candidates.size(), cases, candidates.get(0).meanScore(), candidates.get(0).parameters);
+            if (candidates.size() == 1 || cases == suite.size()) {
+                return candidates.get(0).parameters;
+            }
+            candidates = new ArrayList<>(candidates.subList(0, (candidates.size() + eta - 1) / eta));
+            cases = Math.min(cases * eta, suite.size());
+        }
+    }
+
+    /**
+     * Plays the cities a candidate has not seen yet, up to the given suite size. Scores from
+     * the previous rungs are kept.
+     */
+    private void evaluate(List<Candidate> candidates, int cases) throws InterruptedException {
+        List<Future<Integer>> games = new ArrayList<>();
+        List<Candidate> owners = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            for (int i = candidate.casesPlayed; i < cases; i++) {
+                TestCase testCase = suite.get(i);
+                games.add(pool.submit(() -> new LocalReferee(testCase).play(new Player(candidate.parameters)::playTurn).score));
+                owners.add(candidate);
+            }
+            candidate.casesPlayed = Math.max(candidate.casesPlayed, cases);
+        }
+        for (int i = 0; i < games.size(); i++) {
+            try {
+                owners.get(i).totalScore += games.get(i).get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Game failed outside of the bot", e.getCause());
+            }
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private static void writeDefault(Path source, AIParameters parameters) throws Exception {
+        String content = Files.readString(source);
+        String updated = content.replaceFirst("(static final AIParameters DEFAULT = ).*;",
+            Matcher.quoteReplacement("static final AIParameters DEFAULT = " + parameters.toJavaExpression() + ";"));
+        if (updated.equals(content)) {
+            throw new IllegalStateException("No DEFAULT parameters found in " + source);
+        }
+        Files.writeString(source, updated);
+    }
+
+    private static class Candidate {
+        final AIParameters parameters;
+        long totalScore;
+        int casesPlayed;
+
+        Candidate(AIParameters parameters) {
+            this.parameters = parameters;
+        }
+
+        double meanScore() {
+            return casesPlayed == 0 ? 0 : (double) totalScore / casesPlayed;
+        }
+    }
+}
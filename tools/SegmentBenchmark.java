@@ -0,0 +1,83 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the batched crossing test of {@link SegmentBatch} with the per-tube test on
+ * packed coordinates it replaced, on random non-crossing tubes of a city-sized area. Both
+ * paths must agree on every query.
+ *
+ * Usage: SegmentBenchmark [--tubes n] [--queries n] [--seed seed]
+ */
+class SegmentBenchmark {
+    public static void main(String[] args) {
+        int tubeCount = 200;
+        int queryCount = 200_000;
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--tubes" -> tubeCount = Integer.parseInt(args[++i]);
+                case "--queries" -> queryCount = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+
+        Random random = new Random(seed);
+        SegmentBatch batch = new SegmentBatch();
+        List<int[]> tubes = new ArrayList<>();
+        // Tubes of a real network never cross, keep only the ones that do not
+        for (int attempt = 0; tubes.size() < tubeCount && attempt < 1000 * tubeCount; attempt++) {
+            int[] tube = randomSegment(random);
+            if (batch.crossesAny(tube[0], tube[1], tube[2], tube[3])) {
+                continue;
+            }
+            tubes.add(new int[]{Geometry.pack(tube[0], tube[1]), Geometry.pack(tube[2], tube[3])});
+            batch.add(tube[0], tube[1], tube[2], tube[3]);
+        }
+        int[][] queries = new int[queryCount][];
+        for (int i = 0; i < queryCount; i++) {
+            queries[i] = randomSegment(random);
+        }
+
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            int scalarCrossings = 0;
+            for (int[] query : queries) {
+                int a = Geometry.pack(query[0], query[1]);
+                int b = Geometry.pack(query[2], query[3]);
+                for (int[] tube : tubes) {
+                    if (Geometry.segmentsCross(a, b, tube[0], tube[1])) {
+                        scalarCrossings++;
+                        break;
+                    }
+                }
+            }
+            long scalar = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int batchCrossings = 0;
+            for (int[] query : queries) {
+                if (batch.crossesAny(query[0], query[1], query[2], query[3])) {
+                    batchCrossings++;
+                }
+            }
+            long batched = System.nanoTime() - start;
+
+            if (scalarCrossings != batchCrossings) {
+                throw new IllegalStateException("Scalar found " + scalarCrossings + " crossings, batch " + batchCrossings);
+            }
+            System.out.printf("round %d, %d tubes: scalar %.1f ns/query, batch %.1f ns/query, %d of %d queries cross%n",
+                round, tubes.size(), (double) scalar / queryCount, (double) batched / queryCount, batchCrossings, queryCount);
+        }
+    }
+
+    private static int[] randomSegment(Random random) {
+        // Tubes are short in practice, keep the segments local
+        int x = random.nextInt(TestCase.WIDTH + 1);
+        int y = random.nextInt(TestCase.HEIGHT + 1);
+        return new int[]{x, y,
+            Math.max(0, Math.min(TestCase.WIDTH, x + random.nextInt(41) - 20)),
+            Math.max(0, Math.min(TestCase.HEIGHT, y + random.nextInt(41) - 20))};
+    }
+}
@@ -0,0 +1,133 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A local city: the resources granted and the buildings constructed at the start of each
+ * month, with building lines in the exact format of the game input.
+ *
+ * File format: the number of months, then for each month a line "income numNewBuildings"
+ * followed by the building lines.
+ */
+class TestCase {
+    public static final int MONTHS = 20;
+    public static final int WIDTH = 160;
+    public static final int HEIGHT = 90;
+    public static final int MAX_BUILDINGS = 150;
+    public static final int MAX_ASTRONAUTS = 1000;
+
+    private final String name;
+    private final List<Month> months;
+
+    public TestCase(String name, List<Month> months) {
+        this.name = name;
+        this.months = months;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Month> getMonths() {
+        return months;
+    }
+
+    public static List<TestCase> loadSuite(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(p -> p.toString().endsWith(".txt")).sorted().collect(Collectors.toList());
+        }
+        List<TestCase> suite = new ArrayList<>();
+        for (Path file : files) {
+            suite.add(load(file));
+        }
+        return suite;
+    }
+
+    public static TestCase load(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file).stream()
+            .map(String::trim)
+            .filter(line -> !line.isEmpty())
+            .collect(Collectors.toList());
+        int cursor = 0;
+        int monthCount = Integer.parseInt(lines.get(cursor++));
+        List<Month> months = new ArrayList<>();
+        for (int m = 0; m < monthCount; m++) {
+            String[] header = lines.get(cursor++).split(" ");
+            int income = Integer.parseInt(header[0]);
+            int buildingCount = Integer.parseInt(header[1]);
+            months.add(new Month(income, new ArrayList<>(lines.subList(cursor, cursor + buildingCount))));
+            cursor += buildingCount;
+        }
+        return new TestCase(file.getFileName().toString(), months);
+    }
+
+    /**
+     * Builds a random city in the spirit of the visible test cases. Astronauts only ask for
+     * types that already have a module, as the rules guarantee. Buildings are not kept off
+     * future tubes, so a few tubes can end up blocked by a later building.
+     */
+    public static TestCase random(long seed) {
+        Random random = new Random(seed);
+        boolean[][] used = new boolean[WIDTH + 1][HEIGHT + 1];
+        List<Integer> builtTypes = new ArrayList<>();
+        List<Month> months = new ArrayList<>();
+        int typeCount = 2 + random.nextInt(19);
+        int buildingCount = 20 + random.nextInt(MAX_BUILDINGS - 19);
+        int nextId = 0;
+        int astronautsLeft = MAX_ASTRONAUTS;
+
+        for (int m = 0; m < MONTHS; m++) {
+            int remaining = buildingCount - nextId;
+            int newBuildings = m == 0 ? Math.min(remaining, 3 + random.nextInt(6))
+                : Math.min(remaining, random.nextInt(2 * buildingCount / MONTHS + 1));
+            int income = m == 0 ? 4000 + random.nextInt(20000) : random.nextInt(5000);
+            List<String> lines = new ArrayList<>();
+
+            for (int b = 0; b < newBuildings; b++) {
+                int x;
+                int y;
+                do {
+                    x = random.nextInt(WIDTH + 1);
+                    y = random.nextInt(HEIGHT + 1);
+                } while (used[x][y]);
+                used[x][y] = true;
+                int id = nextId++;
+
+                boolean module = builtTypes.isEmpty() || astronautsLeft == 0 || random.nextInt(3) > 0;
+                if (module) {
+                    int type = 1 + random.nextInt(typeCount);
+                    builtTypes.add(type);
+                    lines.add(type + " " + id + " " + x + " " + y);
+                } else {
+                    int astronauts = Math.min(astronautsLeft, 1 + random.nextInt(100));
+                    astronautsLeft -= astronauts;
+                    StringBuilder line = new StringBuilder();
+                    line.append("0 ").append(id).append(' ').append(x).append(' ').append(y).append(' ').append(astronauts);
+                    for (int a = 0; a < astronauts; a++) {
+                        line.append(' ').append(builtTypes.get(random.nextInt(builtTypes.size())));
+                    }
+                    lines.add(line.toString());
+                }
+            }
+            months.add(new Month(income, lines));
+        }
+        return new TestCase("random-" + seed, Collections.unmodifiableList(months));
+    }
+
+    static class Month {
+        final int income;
+        final List<String> buildingLines;
+
+        Month(int income, List<String> buildingLines) {
+            this.income = income;
+            this.buildingLines = buildingLines;
+        }
+    }
+}